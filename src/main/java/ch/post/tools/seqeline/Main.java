@@ -1,15 +1,26 @@
 package ch.post.tools.seqeline;
 
+import ch.post.tools.seqeline.cache.Manifest;
 import ch.post.tools.seqeline.metadata.MetadataFetcher;
 import ch.post.tools.seqeline.metadata.Schema;
 import ch.post.tools.seqeline.graphdb.GraphDbPublisher;
+import ch.post.tools.seqeline.graphdb.GraphStoreUploader;
+import ch.post.tools.seqeline.parser.DfaCache;
+import ch.post.tools.seqeline.parser.DfaWarmup;
 import ch.post.tools.seqeline.parser.ParseException;
 import ch.post.tools.seqeline.parser.Parser;
+import ch.post.tools.seqeline.process.CallGraph;
+import ch.post.tools.seqeline.process.GraphFormat;
+import ch.post.tools.seqeline.process.Shortcuts;
 import ch.post.tools.seqeline.process.TreeProcessor;
+import ch.post.tools.seqeline.store.LocalStore;
+import ch.post.tools.seqeline.tree.BinaryTree;
+import ch.post.tools.seqeline.tree.Node;
+import ch.post.tools.seqeline.tree.XmlTree;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
-import org.joox.Match;
-import org.xml.sax.SAXException;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.eclipse.rdf4j.rio.Rio;
 import picocli.CommandLine;
 import picocli.CommandLine.ArgGroup;
 import picocli.CommandLine.Command;
@@ -17,15 +28,31 @@ import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
-import static org.joox.JOOX.$;
+import static org.eclipse.rdf4j.model.util.Values.iri;
 
 
 @Command(name = "seqeline", description = "Generate RDF data lineage graph from PL/SQL code.")
@@ -46,6 +73,15 @@ public class Main implements Callable<Integer> {
 
         @Option(names = {"-p", "--password"}, required = true, description = "Database password or @<file> containing password.")
         private String password;
+
+        @Option(names = {"--fetch-threads"}, description = "Database connections used in parallel to fetch metadata", defaultValue = "4")
+        private int fetchThreads;
+
+        @Option(names = {"--aggregated-fetch"}, description = "Let the database aggregate the metadata into a single document")
+        private boolean aggregated;
+
+        @Option(names = {"--incremental"}, description = "Only fetch the relations changed since the previous fetch")
+        private boolean incremental;
     }
 
     static class Args {
@@ -65,6 +101,9 @@ public class Main implements Callable<Integer> {
     @Option(names = {"--tree-only"}, description = "Only generate tree")
     private boolean treeOnly;
 
+    @Option(names = {"--xml-tree"}, description = "Also write trees as XML for debugging")
+    private boolean xmlTree;
+
     @Option(names = {"-t", "--force-tree"}, description = "Ignore cached files and force tree generation")
     private boolean forceTree;
 
@@ -78,6 +117,33 @@ public class Main implements Callable<Integer> {
             "http://localhost:7200/rest/repositories/lineage/")
     private String graphDbRepositoryUrl;
 
+    @Option(names = {"--upload-url"}, description = "RDF4J repository to stream graphs into while generating them, e.g. http://localhost:7200/repositories/lineage")
+    private String uploadUrl;
+
+    @Option(names = {"--shortcuts"}, description = "Compute column lineage shortcuts into an extra graph")
+    private boolean shortcuts;
+
+    @Option(names = {"--dependencies"}, description = "Summarize the dependencies between routines into an extra graph")
+    private boolean dependencies;
+
+    @Option(names = {"--dependencies-output"}, description = "Also write the routine dependencies to a .dot or .csv file")
+    private File dependenciesOutput;
+
+    @Option(names = {"--store"}, description = "Load graphs into a local triple store in this directory")
+    private File storeDir;
+
+    @Option(names = {"--memory-store"}, description = "Keep the local store in memory, persisted to its directory on exit")
+    private boolean memoryStore;
+
+    @Option(names = {"--query"}, description = "SPARQL query to run on the local store, a file or a bundled query: simpllify, code-depenencies")
+    private List<String> queries = new ArrayList<>();
+
+    @Option(names = {"--publish-threads"}, description = "Number of concurrent imports into GraphDB", defaultValue = "2")
+    private int publishThreads;
+
+    @Option(names = {"--publish-batch"}, description = "Maximum number of graphs batched into one import", defaultValue = "20")
+    private int publishBatch;
+
     @Option(names = {"-i", "--ignore-errors"}, description = "Continue on errors")
     private boolean continueOnError;
 
@@ -90,7 +156,31 @@ public class Main implements Callable<Integer> {
     @Option(names = {"-c", "--cache-dir"}, description = "Cache directory", defaultValue = "target/seqeline")
     private File cacheDir;
 
-    private static final String extension = "\\.[^\\.]+$";
+    @Option(names = {"--dfa-budget"}, description = "Number of parser DFA states cached before clearing the cache", defaultValue = "" + DfaCache.DEFAULT_BUDGET)
+    private long dfaBudget;
+
+    @Option(names = {"--dfa-warmup"}, description = "Warm up the parser with units recorded in the cache by previous runs")
+    private boolean dfaWarmup;
+
+    @Option(names = {"--format"}, description = "Graph file format: ${COMPLETION-CANDIDATES}", defaultValue = "trig")
+    private GraphFormat format;
+
+    @Option(names = {"--gzip"}, description = "Compress graph files")
+    private boolean gzip;
+
+    @Option(names = {"--threads"}, description = "Number of files, and units of a file, processed in parallel", defaultValue = "1")
+    private int threads;
+
+    private static final String extension = "\\.[^\\./]+$";
+
+    private static final String SHORTCUTS = "_shortcuts";
+
+    private static final String DEPENDENCIES = "_dependencies";
+
+    private final Map<PredictionMode, AtomicInteger> parseModes = new ConcurrentHashMap<>();
+
+    // Processes the files, and the units of each file, when running with several threads
+    private ExecutorService executor;
 
     @Override
     public Integer call() throws Exception {
@@ -109,19 +199,38 @@ public class Main implements Callable<Integer> {
             }
             var fetcher = new MetadataFetcher(args.database.dbUrl, args.database.username, password);
 
-            try (var out = new FileOutputStream(schemaFile)) {
-                fetcher.fetchMetadata(
-                        getClass().getClassLoader().getResourceAsStream("metadata.sql"),
-                        out
-                );
+            // Taken before fetching, so that objects changed meanwhile are fetched again next time
+            var watermarkFile = new File(metadataDir, "schema.watermark");
+            var watermark = fetcher.databaseTime();
+            // Replaced only once complete, so that a failed fetch leaves the previous metadata
+            var fetched = new File(metadataDir, "schema.json.tmp");
+            if (args.database.incremental && schemaFile.exists() && watermarkFile.exists()) {
+                var since = Timestamp.valueOf(Files.readString(watermarkFile.toPath()).trim());
+                try (var in = new FileInputStream(schemaFile); var out = new FileOutputStream(fetched)) {
+                    fetcher.fetchChanges(in, since, out);
+                }
+            } else {
+                try (var out = new FileOutputStream(fetched)) {
+                    if (args.database.aggregated) {
+                        fetcher.fetchMetadata(
+                                getClass().getClassLoader().getResourceAsStream("metadata.sql"),
+                                out
+                        );
+                    } else {
+                        fetcher.fetchRelations(out, args.database.fetchThreads);
+                    }
+                }
             }
+            Files.move(fetched.toPath(), schemaFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.writeString(watermarkFile.toPath(), watermark.toString());
         }
 
-        Schema schema = new Schema(schemaFile);
+        var schemaHash = Manifest.hash(schemaFile);
+        Schema schema = new Schema(schemaFile, schemaHash);
 
         if(args.database !=null) {
             var relationCount = schema.relations().count();
-            var columnCount = schema.relations().flatMap(r -> r.getBinding().children()).count();
+            var columnCount = schema.relations().mapToLong(r -> r.columns().size()).sum();
             log.info("Fetched "+columnCount+" columns from "+relationCount+" relations.");
 
             return 0;
@@ -135,11 +244,12 @@ public class Main implements Callable<Integer> {
 
         var files = args.generation.paths.stream().flatMap(path -> {
             if (path.isFile()) {
-                return Stream.of(path.getAbsoluteFile());
+                return Stream.of(new SourceFile(path.getAbsoluteFile(), path.getName()));
             } else {
-                try (Stream<Path> stream = Files.walk(Paths.get(path.getAbsolutePath()))) {
+                var root = Paths.get(path.getAbsolutePath());
+                try (Stream<Path> stream = Files.walk(root)) {
                     return stream.filter(file -> !Files.isDirectory(file))
-                            .map(Path::toFile)
+                            .map(file -> new SourceFile(file.toFile(), root.relativize(file).toString().replace(File.separatorChar, '/')))
                             .toList()
                             .stream();
                 } catch (IOException e) {
@@ -148,80 +258,399 @@ public class Main implements Callable<Integer> {
             }
         }).toList();
 
-        GraphDbPublisher graphDbPublisher = new GraphDbPublisher(graphDbRepositoryUrl, outputDir.getAbsolutePath());
+        GraphDbPublisher graphDbPublisher = new GraphDbPublisher(graphDbRepositoryUrl, outputDir.getAbsolutePath(), publishThreads, publishBatch);
 
         if(publish) {
             graphDbPublisher.start();
         }
 
+        DfaCache.setBudget(dfaBudget);
+        var warmupFile = new File(new File(cacheDir, "dfa"), "warmup.sql.gz");
+        // Recording starts after the warm-up, so that the corpus does not sample itself again
+        DfaWarmup warmup = null;
+        if (dfaWarmup) {
+            DfaWarmup.warmUp(warmupFile);
+            warmup = DfaWarmup.record();
+        }
+        var manifest = new Manifest(new File(new File(new File(cacheDir, "manifest"), application), "manifest.json"));
+
+        var failures = new ArrayList<File>();
+        executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
         try {
-            for (var sourceFile : files) {
-                var treeFile = new File(treeDir, sourceFile.getName().replaceAll(extension, ".xml"));
-                var tree = makeTree(sourceFile, treeFile);
-                var graphFile = new File(outputDir, sourceFile.getName().replaceAll(extension, ".trig"));
-                if(tree.isPresent()) {
-                    if (forceGraph || shouldGenerate(treeFile, graphFile) && !treeOnly) {
-                        log.info("Generating graph ...");
-                        String graphName;
-                        try (var out = new FileOutputStream(graphFile)) {
-                            graphName = new TreeProcessor(domain, application, sourceFile.getName().replaceAll(extension, ""), tree.get(), schema).process(out);
-                        }
-                        if (publish) {
-                            graphDbPublisher.publishToGraphDb(graphName, graphFile.getName()).await();
-                        }
-                    } else {
-                        log.info("Graph already up-to-date.");
+            if (executor != null) {
+                // Keep a bounded window of files in flight and consume results in source order
+                var pending = new ArrayDeque<Future<FileResult>>();
+                for (var sourceFile : files) {
+                    var previous = manifest.get(sourceFile.path());
+                    pending.add(executor.submit(() -> generate(sourceFile, previous, treeDir, schema, schemaHash, new FileLog(true))));
+                    if (pending.size() >= threads * 2) {
+                        complete(pending.remove().get(), manifest, graphDbPublisher, failures);
                     }
-                } else {
-                    log.info("Skipped.");
                 }
+                while (!pending.isEmpty()) {
+                    complete(pending.remove().get(), manifest, graphDbPublisher, failures);
+                }
+            } else {
+                for (var sourceFile : files) {
+                    var previous = manifest.get(sourceFile.path());
+                    complete(generate(sourceFile, previous, treeDir, schema, schemaHash, new FileLog(false)), manifest, graphDbPublisher, failures);
+                }
+            }
+            var extraGraphs = new LinkedHashMap<String, LocalStore.GraphFile>();
+            if (shortcuts && !treeOnly) {
+                var shortcutsPath = SHORTCUTS + format.extension(gzip);
+                var shortcutsFile = new File(outputDir, shortcutsPath);
+                var graphName = writeShortcuts(graphFiles(files, manifest).values(), shortcutsFile);
+                if (publish) {
+                    graphDbPublisher.publish(graphName, shortcutsPath);
+                }
+                extraGraphs.put(shortcutsPath, new LocalStore.GraphFile(shortcutsFile, Manifest.hash(shortcutsFile)));
+            }
+            if (dependencies && !treeOnly) {
+                var dependenciesPath = DEPENDENCIES + format.extension(gzip);
+                var dependenciesFile = new File(outputDir, dependenciesPath);
+                var graphName = writeDependencies(files, manifest, dependenciesFile);
+                if (publish) {
+                    graphDbPublisher.publish(graphName, dependenciesPath);
+                }
+                extraGraphs.put(dependenciesPath, new LocalStore.GraphFile(dependenciesFile, Manifest.hash(dependenciesFile)));
+            }
+            graphDbPublisher.await().forEach(graphFile -> failures.add(new File(outputDir, graphFile)));
+            if (storeDir != null && !treeOnly) {
+                var graphs = graphFiles(files, manifest);
+                graphs.putAll(extraGraphs);
+                analyze(graphs);
+            }
+            parseModes.forEach((mode, count) -> log.info("Parsed " + count + " files in " + mode + " mode."));
+            if (!parseModes.isEmpty()) {
+                log.info("DFA cache: " + DfaCache.statistics());
+            }
+            if (!failures.isEmpty()) {
+                log.warn("Finished with " + failures.size() + " errors:");
+                failures.forEach(file -> log.warn("  " + file));
             }
             log.info("done.");
             return 0;
         } catch (ParseException e) {
             log.error("Finished with errors.");
             return 1;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
         } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            manifest.save();
+            if (warmup != null) {
+                warmup.save(warmupFile);
+            }
             graphDbPublisher.close();
         }
     }
 
-    @SneakyThrows
-    private Optional<Match> makeTree(File source, File target) {
-        Match result;
-        log.info("Processing " + source + " ...");
+    /**
+     * Generated graph files, by path relative to the output directory.
+     */
+    private Map<String, LocalStore.GraphFile> graphFiles(List<SourceFile> files, Manifest manifest) {
+        var graphs = new LinkedHashMap<String, LocalStore.GraphFile>();
+        for (var source : files) {
+            var graphPath = graphPath(source);
+            var graphFile = new File(outputDir, graphPath);
+            manifest.get(source.path())
+                    .filter(entry -> entry.graph() != null && graphFile.exists())
+                    .ifPresent(entry -> graphs.put(graphPath, new LocalStore.GraphFile(graphFile, entry.graph())));
+        }
+        return graphs;
+    }
+
+    /**
+     * Computes the shortcuts over the union of the graphs and writes them as a graph of their own.
+     *
+     * @return the name of the shortcuts graph
+     */
+    private String writeShortcuts(Collection<LocalStore.GraphFile> graphs, File target) throws IOException {
+        var start = System.currentTimeMillis();
+        var shortcuts = new Shortcuts(domain, null);
+        for (var graph : graphs) {
+            var parser = Rio.createParser(format.getRdfFormat());
+            parser.setRDFHandler(shortcuts);
+            try (var in = GraphFormat.read(graph.file())) {
+                parser.parse(in, "");
+            }
+        }
+        var graphName = TreeProcessor.graphName(domain, application, SHORTCUTS);
+        target.getParentFile().mkdirs();
+        int count;
+        try (var out = graphOutput(target)) {
+            count = shortcuts.write(iri(graphName), Rio.createWriter(format.getRdfFormat(), out));
+        }
+        log.info("Computed " + count + " shortcuts in " + (System.currentTimeMillis() - start) + " ms.");
+        return graphName;
+    }
+
+    /**
+     * Loads the graphs into the local store and runs the queries on it.
+     */
+    private void analyze(Map<String, LocalStore.GraphFile> graphs) throws IOException {
+        try (var store = new LocalStore(storeDir, memoryStore)) {
+            var start = System.currentTimeMillis();
+            var count = store.update(graphs);
+            log.info("Loaded " + count + " of " + graphs.size() + " graphs into the local store in " + (System.currentTimeMillis() - start) + " ms.");
+            for (var query : queries) {
+                log.info("Query " + query + " written to " + store.query(query, new File(storeDir, "results")));
+            }
+        }
+    }
+
+    /**
+     * Calls found in a source file, cached to merge the dependencies of all files.
+     */
+    private File callsFile(SourceFile source) {
+        return new File(new File(new File(cacheDir, "calls"), application), source.path().replaceAll(extension, ".csv"));
+    }
+
+    /**
+     * Merges the calls of all files and writes them as a graph of their own, and to the dependencies output if any.
+     *
+     * @return the name of the dependencies graph
+     */
+    private String writeDependencies(List<SourceFile> files, Manifest manifest, File target) throws IOException {
+        var callGraph = new CallGraph();
+        for (var source : files) {
+            var callsFile = callsFile(source);
+            if (manifest.get(source.path()).filter(entry -> entry.graph() != null).isPresent() && callsFile.exists()) {
+                try (var reader = new InputStreamReader(new FileInputStream(callsFile), StandardCharsets.UTF_8)) {
+                    callGraph.merge(CallGraph.readCsv(reader));
+                }
+            }
+        }
+        var graphName = TreeProcessor.graphName(domain, application, DEPENDENCIES);
+        target.getParentFile().mkdirs();
+        try (var out = graphOutput(target)) {
+            callGraph.write(iri(graphName), TreeProcessor.dataNamespace(domain, application), TreeProcessor.schemaNamespace(domain),
+                    Rio.createWriter(format.getRdfFormat(), out));
+        }
+        if (dependenciesOutput != null) {
+            if (dependenciesOutput.getAbsoluteFile().getParentFile() != null) {
+                dependenciesOutput.getAbsoluteFile().getParentFile().mkdirs();
+            }
+            try (var writer = new OutputStreamWriter(new FileOutputStream(dependenciesOutput), StandardCharsets.UTF_8)) {
+                if (dependenciesOutput.getName().endsWith(".csv")) {
+                    callGraph.writeCsv(writer);
+                } else {
+                    callGraph.writeDot(writer);
+                }
+            }
+        }
+        log.info("Found " + callGraph.size() + " dependencies between routines.");
+        return graphName;
+    }
+
+    private OutputStream graphOutput(File target) throws IOException {
+        var out = new FileOutputStream(target);
+        return gzip ? new GZIPOutputStream(out, 1 << 16) : new BufferedOutputStream(out, 1 << 16);
+    }
+
+    private String graphPath(SourceFile source) {
+        return source.path().replaceAll(extension, format.extension(gzip));
+    }
+
+    private FileResult generate(SourceFile source, Optional<Manifest.Entry> previous, File treeDir, Schema schema, String schemaHash, FileLog fileLog) {
+        var treeFile = new File(treeDir, source.path().replaceAll(extension, ".tree"));
+        var graphPath = graphPath(source);
+        var graphFile = new File(outputDir, graphPath);
+        fileLog.info("Processing " + source.file() + " ...");
+
+        var sourceHash = Manifest.hash(source.file());
+        var treeCached = !forceTree && treeFile.exists() && previous.filter(entry -> entry.hasTree(sourceHash)).isPresent();
+        var graphCached = treeCached && !forceGraph && graphFile.exists() && callsFile(source).exists() &&
+                previous.filter(entry -> entry.hasGraph(sourceHash, schemaHash, schema::fingerprint)).isPresent();
+        if (graphCached || treeCached && treeOnly) {
+            fileLog.info("Already up-to-date.");
+            return new FileResult(source, fileLog, previous.get(), graphPath, null, null);
+        }
+
+        Optional<Tree> tree;
         try {
-            if (forceTree || shouldGenerate(source, target)) {
-                try (var out = new FileOutputStream(target)) {
-                    try (var in = new FileInputStream(source)) {
-                        result = new Parser().parse(in);
+            tree = makeTree(source.file(), treeFile, treeCached ? previous.get().tree() : null, fileLog);
+        } catch (ParseException e) {
+            return new FileResult(source, fileLog, null, graphPath, null, e);
+        }
+        if (tree.isEmpty()) {
+            fileLog.info("Skipped.");
+            return new FileResult(source, fileLog, null, graphPath, null, null);
+        }
+
+        String graphName = null;
+        String graphHash = null;
+        Map<String, String> relations = null;
+        if (!treeOnly) {
+            fileLog.info("Generating graph ...");
+            graphFile.getParentFile().mkdirs();
+            var processor = new TreeProcessor(domain, application, source.path().replaceAll(extension, ""), tree.get().root(), schema);
+            try {
+                if (uploadUrl != null) {
+                    // Fails before the upload is opened, the repository keeps its graph
+                    processor.analyze();
+                }
+                var out = Manifest.hashing(new FileOutputStream(graphFile));
+                try (out) {
+                    if (uploadUrl != null) {
+                        // Aborted unless committed, so that a failed generation does not replace the graph
+                        try (var upload = new GraphStoreUploader(uploadUrl).open(processor.getGraphName(), format)) {
+                            graphName = processor.process(out, format, gzip, upload.handler());
+                            upload.commit();
+                        }
+                    } else {
+                        graphName = processor.process(out, format, gzip);
                     }
-                    result.write(out);
                 }
-            } else {
-                log.info("Using cached tree.");
-                result = $(target);
+                graphHash = Manifest.hash(out);
+                relations = new TreeMap<>();
+                for (var name : processor.getResolvedRelations()) {
+                    relations.put(name, schema.fingerprint(name));
+                }
+                var callsFile = callsFile(source);
+                callsFile.getParentFile().mkdirs();
+                try (var writer = new OutputStreamWriter(new FileOutputStream(callsFile), StandardCharsets.UTF_8)) {
+                    processor.getCallGraph().writeCsv(writer);
+                }
+            } catch (GraphStoreUploader.UploadException e) {
+                uploadFailed(e, fileLog);
+                graphName = null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        var entry = new Manifest.Entry(sourceHash, Manifest.VERSION, schemaHash, tree.get().hash(), graphHash, relations);
+        return new FileResult(source, fileLog, entry, graphPath, graphName, null);
+    }
+
+    /**
+     * Leaves the graph out of the manifest, so that it is generated and uploaded again on the next run.
+     */
+    private static void uploadFailed(Exception e, FileLog fileLog) {
+        fileLog.error("Upload failed: " + e.getMessage());
+        fileLog.failed = true;
+    }
+
+    private void complete(FileResult result, Manifest manifest, GraphDbPublisher graphDbPublisher, List<File> failures) throws InterruptedException {
+        result.log().flush();
+        if (result.entry() != null) {
+            manifest.put(result.source().path(), result.entry());
+        } else {
+            // Skipped or failed, its previous graph and calls must not be used any more
+            manifest.remove(result.source().path());
+        }
+        if (result.error() != null) {
+            throw result.error();
+        }
+        if (result.log().failed) {
+            failures.add(result.source().file());
+        }
+        if (publish && result.graphName() != null) {
+            graphDbPublisher.publish(result.graphName(), result.graphFile());
+        }
+    }
+
+    /**
+     * Reads the cached tree if its hash is known, parses the source otherwise.
+     */
+    @SneakyThrows
+    private Optional<Tree> makeTree(File source, File target, String cachedHash, FileLog fileLog) {
+        if (cachedHash != null) {
+            try {
+                var result = BinaryTree.read(target);
+                fileLog.info("Using cached tree.");
+                return Optional.of(new Tree(result, cachedHash));
+            } catch (IOException e) {
+                fileLog.info("Ignoring unreadable cached tree.");
+            }
+        }
+        try {
+            Node result;
+            var parser = new Parser(executor, threads * 2, fileLog::error);
+            try (var in = new FileInputStream(source)) {
+                result = parser.parse(in);
+            }
+            fileLog.info("Parsed in " + parser.getPredictionMode() + " mode.");
+            parseModes.computeIfAbsent(parser.getPredictionMode(), mode -> new AtomicInteger()).incrementAndGet();
+            target.getParentFile().mkdirs();
+            var out = Manifest.hashing(new FileOutputStream(target));
+            try (out) {
+                BinaryTree.write(result, out);
+            }
+            if (xmlTree) {
+                var xmlFile = new File(target.getParentFile(), target.getName().replaceAll(extension, ".xml"));
+                try (var writer = new OutputStreamWriter(new FileOutputStream(xmlFile), StandardCharsets.UTF_8)) {
+                    XmlTree.write(result, writer);
+                }
             }
-            return Optional.of(result);
+            return Optional.of(new Tree(result, Manifest.hash(out)));
         } catch (ParseException e) {
             if(target.delete()) {
-                log.info("Deleted " + target);
+                fileLog.info("Deleted " + target);
             } else {
-                log.error("Deleted " + target);
+                fileLog.error("Deleted " + target);
             }
 
-            if (!e.isSkipped() && !continueOnError) {
-                throw e;
+            if (!e.isSkipped()) {
+                if (!continueOnError) {
+                    throw e;
+                }
+                fileLog.failed = true;
             }
         }
         return Optional.empty();
     }
 
-    private boolean shouldGenerate(File source, File target) {
-        return !target.exists() || target.length() == 0 || source.lastModified() > target.lastModified();
+    /**
+     * Source file with its path relative to the given source directory, used as cache key.
+     */
+    private record SourceFile(File file, String path) {
+    }
+
+    private record Tree(Node root, String hash) {
+    }
+
+    private record FileResult(SourceFile source, FileLog log, Manifest.Entry entry, String graphFile, String graphName, ParseException error) {
+    }
+
+    /**
+     * Collects the log messages of one file, so that they appear in source order when files are processed in parallel.
+     */
+    private static class FileLog {
+        private final boolean buffered;
+        private final List<Runnable> messages = new ArrayList<>();
+        private boolean failed = false;
+
+        FileLog(boolean buffered) {
+            this.buffered = buffered;
+        }
+
+        void info(String message) {
+            emit(() -> log.info(message));
+        }
+
+        void error(String message) {
+            emit(() -> log.error(message));
+        }
+
+        private void emit(Runnable message) {
+            if (buffered) {
+                messages.add(message);
+            } else {
+                message.run();
+            }
+        }
+
+        void flush() {
+            messages.forEach(Runnable::run);
+            messages.clear();
+        }
     }
 
-    public static void main(String... args) throws IOException, SAXException {
-        System.exit(new CommandLine(new Main()).execute(args));
+    public static void main(String... args) {
+        System.exit(new CommandLine(new Main()).setCaseInsensitiveEnumValuesAllowed(true).execute(args));
     }
 }
@@ -3,20 +3,15 @@ package ch.post.tools.seqeline.binding;
 import ch.post.tools.seqeline.stack.QualifiedName;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
-@RequiredArgsConstructor
 public class Binding {
 
-    private final static AtomicInteger sequence = new AtomicInteger(0);
-
     @Getter
-    private final int id = sequence.incrementAndGet();
+    private final int id;
 
     @Getter
     private final String name;
@@ -38,17 +33,31 @@ public class Binding {
     @Setter
     private String comment;
 
-    private final Map<String, Binding> children = new HashMap<>();
+    // Related bindings, see CompactBindings
+    private Object children;
+
+    private Object outputs;
+
+    private Object effects;
 
-    private final Set<Binding> outputs = new HashSet<>();
+    private Object references;
 
-    private final Set<Binding> effects = new HashSet<>();
+    public Binding(String name, BindingType type) {
+        this(BindingSequence.nextId(), name != null ? name.intern() : null, type);
+    }
 
-    private final Set<Binding> references = new HashSet<>();
+    /**
+     * Binding with an id allocated by {@link BindingSequence#allocate(int)}, the name being already interned.
+     */
+    public Binding(int id, String name, BindingType type) {
+        this.id = id;
+        this.name = name;
+        this.type = type;
+    }
 
     public Optional<Binding> match(QualifiedName qualifiedName) {
         if(name.equals(qualifiedName.getPrefix())) {
-            return Optional.ofNullable(children.get(name));
+            return Optional.ofNullable(CompactBindings.get(children, name, true));
         } else if(qualifiedName.getPrefix() == null && name.equals(qualifiedName.getName())) {
             return Optional.of(this);
         } else {
@@ -57,20 +66,30 @@ public class Binding {
     }
 
     public Binding addChild(Binding binding) {
-        children.putIfAbsent(binding.getName(), binding);
-        return children.get(binding.getName());
+        var existing = CompactBindings.get(children, binding.getName(), true);
+        if (existing != null) {
+            return existing;
+        }
+        children = CompactBindings.add(children, binding, true);
+        return binding;
     }
 
     public void addOutput(Binding binding) {
-        outputs.add(binding);
+        if (CompactBindings.get(outputs, binding, false) == null) {
+            outputs = CompactBindings.add(outputs, binding, false);
+        }
     }
 
     public void addEffect(Binding binding) {
-        effects.add(binding);
+        if (CompactBindings.get(effects, binding, false) == null) {
+            effects = CompactBindings.add(effects, binding, false);
+        }
     }
 
     public void addReference(Binding binding) {
-        references.add(binding);
+        if (CompactBindings.get(references, binding, false) == null) {
+            references = CompactBindings.add(references, binding, false);
+        }
     }
 
     public Binding addType(String type) {
@@ -82,19 +101,19 @@ public class Binding {
     }
 
     public Stream<Binding> children() {
-        return children.values().stream();
+        return CompactBindings.stream(children);
     }
 
     public Stream<Binding> outputs() {
-        return outputs.stream();
+        return CompactBindings.stream(outputs);
     }
 
     public Stream<Binding> effects() {
-        return effects.stream();
+        return CompactBindings.stream(effects);
     }
 
     public Stream<Binding> references() {
-        return references.stream();
+        return CompactBindings.stream(references);
     }
 
     public Stream<String> additionalTypes() {
@@ -105,8 +124,4 @@ public class Binding {
         this.position = position;
         return this;
     }
-
-    public static void resetCounter() {
-        sequence.set(0);
-    }
 }
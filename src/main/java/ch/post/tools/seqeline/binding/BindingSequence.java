@@ -0,0 +1,43 @@
+package ch.post.tools.seqeline.binding;
+
+import java.util.function.Supplier;
+
+/**
+ * Allocates binding ids. Each graph generation runs with its own sequence so that ids are deterministic
+ * even when several files are processed concurrently.
+ */
+public class BindingSequence {
+
+    private static final ThreadLocal<BindingSequence> current = ThreadLocal.withInitial(BindingSequence::new);
+
+    private int last = 0;
+
+    static int nextId() {
+        return ++current.get().last;
+    }
+
+    /**
+     * Allocates consecutive ids for bindings created together, as when instantiating a relation template.
+     *
+     * @return the first allocated id
+     */
+    public static int allocate(int count) {
+        var sequence = current.get();
+        var first = sequence.last + 1;
+        sequence.last += count;
+        return first;
+    }
+
+    /**
+     * Runs the action with this sequence as id source for all bindings created in the current thread.
+     */
+    public <T> T run(Supplier<T> action) {
+        var previous = current.get();
+        current.set(this);
+        try {
+            return action.get();
+        } finally {
+            current.set(previous);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package ch.post.tools.seqeline.binding;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Storage for the bindings related to a binding, held in a single field. Starts empty (null), holds a single binding
+ * inline, then a small array and finally a hash map. Bindings are keyed either by name or by identity.
+ * <p>
+ * Arrays are kept in the iteration order a default {@link HashMap} would have, and are converted to one when such a
+ * map would resize, so that iteration order does not depend on the representation.
+ */
+final class CompactBindings {
+
+    /**
+     * Resize threshold of a default hash map.
+     */
+    private static final int ARRAY_LIMIT = 12;
+
+    private static final int ARRAY_BUCKETS = 16;
+
+    private CompactBindings() {
+    }
+
+    static Binding get(Object slot, Object key, boolean byName) {
+        if (slot == null) {
+            return null;
+        } else if (slot instanceof Binding binding) {
+            return matches(binding, key, byName) ? binding : null;
+        } else if (slot instanceof Binding[] array) {
+            for (var binding : array) {
+                if (matches(binding, key, byName)) {
+                    return binding;
+                }
+            }
+            return null;
+        } else {
+            return map(slot).get(key);
+        }
+    }
+
+    /**
+     * Adds a binding which is not yet present.
+     *
+     * @return the new content of the slot
+     */
+    static Object add(Object slot, Binding binding, boolean byName) {
+        if (slot == null) {
+            return binding;
+        } else if (slot instanceof Binding single) {
+            return insert(new Binding[]{single}, binding, byName);
+        } else if (slot instanceof Binding[] array) {
+            if (array.length < ARRAY_LIMIT) {
+                return insert(array, binding, byName);
+            }
+            var map = new HashMap<Object, Binding>();
+            for (var existing : array) {
+                map.put(key(existing, byName), existing);
+            }
+            map.put(key(binding, byName), binding);
+            return map;
+        } else {
+            map(slot).put(key(binding, byName), binding);
+            return slot;
+        }
+    }
+
+    static Stream<Binding> stream(Object slot) {
+        if (slot == null) {
+            return Stream.empty();
+        } else if (slot instanceof Binding binding) {
+            return Stream.of(binding);
+        } else if (slot instanceof Binding[] array) {
+            return Arrays.stream(array);
+        } else {
+            return map(slot).values().stream();
+        }
+    }
+
+    private static Binding[] insert(Binding[] array, Binding binding, boolean byName) {
+        // After the bindings of the same or lower buckets, like in a hash map bucket list
+        var bucket = bucket(key(binding, byName));
+        int position = array.length;
+        while (position > 0 && bucket(key(array[position - 1], byName)) > bucket) {
+            position--;
+        }
+        var result = new Binding[array.length + 1];
+        System.arraycopy(array, 0, result, 0, position);
+        result[position] = binding;
+        System.arraycopy(array, position, result, position + 1, array.length - position);
+        return result;
+    }
+
+    private static Object key(Binding binding, boolean byName) {
+        return byName ? binding.getName() : binding;
+    }
+
+    private static boolean matches(Binding binding, Object key, boolean byName) {
+        return byName ? Objects.equals(binding.getName(), key) : binding == key;
+    }
+
+    private static int bucket(Object key) {
+        int h = Objects.hashCode(key);
+        return (h ^ (h >>> 16)) & (ARRAY_BUCKETS - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Object, Binding> map(Object slot) {
+        return (Map<Object, Binding>) slot;
+    }
+}
@@ -0,0 +1,160 @@
+package ch.post.tools.seqeline.cache;
+
+import ch.post.tools.seqeline.process.TreeProcessor;
+import ch.post.tools.seqeline.tree.BinaryTree;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Records, per source file relative path, the hashes of the inputs and outputs of the last generation.
+ * Files are regenerated only when an input that matters changed, whatever the file timestamps.
+ */
+@Slf4j
+public class Manifest {
+
+    /**
+     * Version of seqeline, of the tree format and of the generated graphs. Changing it invalidates all cached files.
+     */
+    public static final String VERSION = seqelineVersion() + "/tree-" + BinaryTree.VERSION + "/graph-" + TreeProcessor.VERSION;
+
+    /**
+     * @param relations fingerprints of the relations resolved in the schema when generating the graph, by name
+     */
+    public record Entry(String source, String version, String schema, String tree, String graph, Map<String, String> relations) {
+
+        public Entry(String source, String version, String schema, String tree, String graph) {
+            this(source, version, schema, tree, graph, null);
+        }
+
+        public boolean hasTree(String sourceHash) {
+            return tree != null && VERSION.equals(version) && sourceHash.equals(source);
+        }
+
+        public boolean hasGraph(String sourceHash, String schemaHash) {
+            return hasGraph(sourceHash, schemaHash, name -> null);
+        }
+
+        /**
+         * After a schema change, the graph is still up-to-date if none of the relations it resolved changed.
+         *
+         * @param fingerprints current fingerprint of a relation by name
+         */
+        public boolean hasGraph(String sourceHash, String schemaHash, Function<String, String> fingerprints) {
+            return graph != null && hasTree(sourceHash) && (schemaHash.equals(schema) || relations != null &&
+                    relations.entrySet().stream().allMatch(relation -> relation.getValue().equals(fingerprints.apply(relation.getKey()))));
+        }
+    }
+
+    private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final File file;
+
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    @SneakyThrows
+    public Manifest(File file) {
+        this.file = file;
+        if (file.exists()) {
+            try {
+                entries.putAll(mapper.readValue(file, new TypeReference<Map<String, Entry>>() {
+                }));
+            } catch (IOException e) {
+                log.warn("Ignoring unreadable manifest " + file);
+            }
+        }
+    }
+
+    public Optional<Entry> get(String path) {
+        return Optional.ofNullable(entries.get(path));
+    }
+
+    public void put(String path, Entry entry) {
+        entries.put(path, entry);
+    }
+
+    public void remove(String path) {
+        entries.remove(path);
+    }
+
+    @SneakyThrows
+    public void save() {
+        file.getParentFile().mkdirs();
+        var temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        mapper.writeValue(temp, entries);
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Content hash of a file, or "none" if it does not exist.
+     */
+    @SneakyThrows
+    public static String hash(File file) {
+        if (!file.exists()) {
+            return "none";
+        }
+        try (var in = new FileInputStream(file)) {
+            return hash(in);
+        }
+    }
+
+    @SneakyThrows
+    public static String hash(InputStream in) {
+        var digest = digest();
+        var buffer = new byte[65536];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Stream computing the hash of what is written through it, available with {@link #hash(DigestOutputStream)}.
+     */
+    public static DigestOutputStream hashing(OutputStream out) {
+        return new DigestOutputStream(out, digest());
+    }
+
+    public static String hash(DigestOutputStream out) {
+        return HexFormat.of().formatHex(out.getMessageDigest().digest());
+    }
+
+    /**
+     * Project version, filtered into a resource by the build, or "dev" when running unfiltered classes.
+     */
+    @SneakyThrows
+    private static String seqelineVersion() {
+        var properties = new Properties();
+        try (var in = Manifest.class.getResourceAsStream("/seqeline.properties")) {
+            if (in != null) {
+                properties.load(in);
+            }
+        }
+        var version = properties.getProperty("version", "");
+        return version.isEmpty() || version.startsWith("${") ? "dev" : version;
+    }
+
+    @SneakyThrows
+    private static MessageDigest digest() {
+        return MessageDigest.getInstance("SHA-256");
+    }
+}
@@ -1,38 +1,67 @@
 package ch.post.tools.seqeline.graphdb;
 
+import ch.post.tools.seqeline.process.GraphFormat;
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.concurrent.CountDownLatch;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
+/**
+ * Serves graph files to GraphDB. Besides the files under the base path, registered resources concatenate
+ * several files into one response.
+ * <p>
+ * Files are streamed from their channel without being loaded in memory. Single byte ranges are supported to resume
+ * downloads, and uncompressed graphs are gzip-encoded for clients accepting it.
+ */
 @Slf4j
 public class FileServer {
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
     private final HttpServer server;
     private final ExecutorService executor;
     private final String basePath;
-    private final Supplier<CountDownLatch> latchSupplier;
+    private final Map<String, List<Path>> resources = new ConcurrentHashMap<>();
 
     @SneakyThrows
-    public FileServer(int port, String basePath, Supplier<CountDownLatch> latchSupplier) {
+    public FileServer(int port, String basePath) {
         this.basePath = basePath;
         server = HttpServer.create(new java.net.InetSocketAddress(port), 0);
         server.createContext("/", new FileHandler());
-        this.executor = Executors.newFixedThreadPool(2);
+        // Downloads mostly wait on the network, one thread per concurrent download
+        this.executor = Executors.newCachedThreadPool();
         server.setExecutor(executor);
         server.start();
-        this.latchSupplier = latchSupplier;
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public void register(String path, List<Path> files) {
+        resources.put(path, files);
+    }
+
+    public void unregister(String path) {
+        resources.remove(path);
     }
 
     public void stop() {
@@ -40,28 +69,135 @@ public class FileServer {
         executor.shutdown();
     }
 
+    /**
+     * Compressed graphs are served as archives, the import recognizes them from the file name.
+     */
+    static String contentType(String fileName) {
+        if (GraphFormat.isCompressed(fileName)) {
+            return "application/gzip";
+        }
+        return GraphFormat.of(fileName)
+                .map(format -> format.getRdfFormat().getDefaultMIMEType())
+                .orElse("application/octet-stream");
+    }
+
+    /**
+     * @return the first and last byte of the requested range, null if the whole content is requested
+     * or the header holds several ranges
+     */
+    static long[] range(String header, long length) {
+        if (header == null) {
+            return null;
+        }
+        var matcher = RANGE.matcher(header.strip());
+        if (!matcher.matches() || matcher.group(1).isEmpty() && matcher.group(2).isEmpty()) {
+            return null;
+        }
+        if (matcher.group(1).isEmpty()) {
+            var suffix = Long.parseLong(matcher.group(2));
+            return new long[]{Math.max(0, length - suffix), length - 1};
+        }
+        var first = Long.parseLong(matcher.group(1));
+        var last = matcher.group(2).isEmpty() ? length - 1 : Math.min(Long.parseLong(matcher.group(2)), length - 1);
+        return new long[]{first, last};
+    }
+
+    /**
+     * Transfers count bytes of the concatenated files, starting at the given offset.
+     */
+    static void transfer(List<Path> files, long offset, long count, WritableByteChannel target) throws IOException {
+        for (var file : files) {
+            if (count == 0) {
+                return;
+            }
+            try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                var size = channel.size();
+                if (offset >= size) {
+                    offset -= size;
+                    continue;
+                }
+                var position = offset;
+                var end = Math.min(size, offset + count);
+                while (position < end) {
+                    position += channel.transferTo(position, end - position, target);
+                }
+                count -= end - offset;
+                offset = 0;
+            }
+        }
+    }
+
     class FileHandler implements HttpHandler {
 
         @Override
         public void handle(HttpExchange exchange) throws IOException {
+            try {
+                serve(exchange);
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private void serve(HttpExchange exchange) throws IOException {
             String requestPath = exchange.getRequestURI().getPath();
-            Path filePath = Paths.get(basePath + requestPath);
-            if (Files.exists(filePath) && !Files.isDirectory(filePath)) {
-                log.info("Serving {}", filePath);
-                byte[] fileBytes = Files.readAllBytes(filePath);
-                exchange.sendResponseHeaders(200, fileBytes.length);
-                OutputStream responseBody = exchange.getResponseBody();
-                responseBody.write(fileBytes);
-                responseBody.close();
-            } else {
-                log.error("Cannot find {}", filePath);
+            List<Path> files = resources.get(requestPath);
+            if (files == null) {
+                Path filePath = Paths.get(basePath + requestPath);
+                files = Files.exists(filePath) && !Files.isDirectory(filePath) ? List.of(filePath) : null;
+            }
+            if (files == null) {
+                log.error("Cannot find {}", requestPath);
                 String response = "File not found";
                 exchange.sendResponseHeaders(404, response.length());
-                OutputStream responseBody = exchange.getResponseBody();
-                responseBody.write(response.getBytes());
-                responseBody.close();
+                exchange.getResponseBody().write(response.getBytes());
+                return;
+            }
+
+            long length = 0;
+            for (var file : files) {
+                length += Files.size(file);
+            }
+            var fileName = files.get(0).getFileName().toString();
+            var headers = exchange.getResponseHeaders();
+            headers.set("Content-Type", contentType(fileName));
+            headers.set("Accept-Ranges", "bytes");
+            var head = exchange.getRequestMethod().equals("HEAD");
+            var range = range(exchange.getRequestHeaders().getFirst("Range"), length);
+            var acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+
+            if (range != null) {
+                if (range[0] > range[1]) {
+                    headers.set("Content-Range", "bytes */" + length);
+                    exchange.sendResponseHeaders(416, -1);
+                    return;
+                }
+                var count = range[1] - range[0] + 1;
+                log.info("Serving {} bytes {}-{}", requestPath, range[0], range[1]);
+                headers.set("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+                exchange.sendResponseHeaders(206, head ? -1 : count);
+                if (!head) {
+                    try (OutputStream body = exchange.getResponseBody()) {
+                        transfer(files, range[0], count, Channels.newChannel(body));
+                    }
+                }
+            } else if (acceptEncoding != null && acceptEncoding.contains("gzip") && !GraphFormat.isCompressed(fileName) && length > 0) {
+                log.info("Serving {} gzip-encoded", requestPath);
+                headers.set("Content-Encoding", "gzip");
+                exchange.sendResponseHeaders(200, head ? -1 : 0);
+                if (!head) {
+                    try (var body = new GZIPOutputStream(exchange.getResponseBody(), 1 << 16)) {
+                        transfer(files, 0, length, Channels.newChannel(body));
+                    }
+                }
+            } else {
+                log.info("Serving {}", requestPath);
+                exchange.sendResponseHeaders(200, head || length == 0 ? -1 : length);
+                if (!head) {
+                    try (OutputStream body = exchange.getResponseBody()) {
+                        transfer(files, 0, length, Channels.newChannel(body));
+                    }
+                }
             }
-            latchSupplier.get().countDown();
         }
     }
 }
@@ -1,81 +1,275 @@
 package ch.post.tools.seqeline.graphdb;
 
+import ch.post.tools.seqeline.process.GraphFormat;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.TextNode;
-import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.concurrent.CountDownLatch;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Imports graphs into a GraphDB repository in the background.
+ * <p>
+ * Generated graphs are queued, blocking the producer when imports fall behind. Graphs queued while all imports are
+ * running are batched into the next import. GraphDB downloads each import from the embedded file server and its
+ * completion is tracked through the import status of the repository. Failed imports are retried with an exponential
+ * backoff.
+ */
 @Slf4j
-public class GraphDbPublisher {
+public class GraphDbPublisher implements AutoCloseable {
+
+    public static final int SERVER_PORT = 25869;
+
+    private static final Graph END = new Graph(null, null);
 
     private final String repositoryUrl;
-    private final static int SERVER_PORT = 25869;
+    private final String basePath;
+    private final int port;
+    private final int concurrency;
+    private final int batchSize;
+    private final int retries;
+    private final Duration backoff;
+    private final Duration pollInterval;
+    private final Duration importTimeout;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    /**
+     * Prefix of the import names, as GraphDB keeps the status of the imports of previous runs.
+     */
+    private final String run = UUID.randomUUID().toString();
+    private final AtomicInteger importIds = new AtomicInteger();
+    private final List<CompletableFuture<Void>> imports = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+    private final BlockingQueue<Graph> queue;
+    private final Semaphore permits;
+
+    private ExecutorService executor;
+    private HttpClient client;
     private FileServer fileServer;
-    private String basePath;
+    private Thread dispatcher;
     private boolean started = false;
-    private CountDownLatch latch;
 
-    public GraphDbPublisher(String repositoryUrl, String basePath) {
+    private record Graph(String name, String file) {
+    }
+
+    public GraphDbPublisher(String repositoryUrl, String basePath, int concurrency, int batchSize) {
+        this(repositoryUrl, basePath, SERVER_PORT, concurrency, batchSize, 3, Duration.ofSeconds(1), Duration.ofMillis(500), Duration.ofMinutes(30));
+    }
+
+    GraphDbPublisher(String repositoryUrl, String basePath, int port, int concurrency, int batchSize,
+                     int retries, Duration backoff, Duration pollInterval, Duration importTimeout) {
+        this.repositoryUrl = repositoryUrl.replaceAll("/+$", "");
         this.basePath = basePath;
-        this.repositoryUrl = repositoryUrl;
+        this.port = port;
+        this.concurrency = concurrency;
+        this.batchSize = batchSize;
+        this.retries = retries;
+        this.backoff = backoff;
+        this.pollInterval = pollInterval;
+        this.importTimeout = importTimeout;
+        this.queue = new ArrayBlockingQueue<>(concurrency * batchSize * 2);
+        this.permits = new Semaphore(concurrency);
     }
 
-    @SneakyThrows
-    public CountDownLatch publishToGraphDb(String graphName, String graphFile) {
-        latch = new CountDownLatch(1);
-        URL url = new URL(repositoryUrl + "/import/upload/url");
-        String sourceUrl = "http://localhost:"+ SERVER_PORT +"/"+graphFile;
-        HttpURLConnection con = (HttpURLConnection) url.openConnection();
-        con.setRequestMethod("POST");
-        con.setRequestProperty("Content-Type", "application/json");
-        con.setDoOutput(true);
-
-        var mapper = new ObjectMapper();
-        var request = mapper.createObjectNode();
-        var graphs = mapper.createArrayNode();
-        var fileNames = mapper.createArrayNode();
-        fileNames.add(graphFile);
-        request.set("data", new TextNode(sourceUrl));
-        request.set("name", new TextNode(sourceUrl));
-        graphs.add(graphName);
-        request.set("replaceGraphs", graphs);
-
-        try (OutputStream os = con.getOutputStream()) {
-            mapper.writeValue(os, request);
+    public void start() {
+        if (!started) {
+            executor = Executors.newFixedThreadPool(concurrency);
+            client = HttpClient.newBuilder()
+                    .executor(executor)
+                    .connectTimeout(Duration.ofSeconds(30))
+                    .build();
+            fileServer = new FileServer(port, basePath);
+            dispatcher = new Thread(this::dispatch, "graphdb-publisher");
+            dispatcher.start();
+            started = true;
         }
+    }
 
-        if (con.getResponseCode() != 200) {
-            InputStream err = con.getErrorStream();
-            if (err != null) {
-                try (BufferedReader br = new BufferedReader(
-                        new InputStreamReader(err, "utf-8"))) {
-                    StringBuilder response = new StringBuilder();
-                    String responseLine;
-                    while ((responseLine = br.readLine()) != null) {
-                        response.append(responseLine.trim());
+    /**
+     * Queues a graph for import, waiting if the queue is full.
+     *
+     * @param graphFile path of the graph file relative to the base path
+     */
+    public void publish(String graphName, String graphFile) throws InterruptedException {
+        queue.put(new Graph(graphName, graphFile));
+    }
+
+    /**
+     * Waits until all queued graphs are imported.
+     *
+     * @return the files of the graphs which could not be imported
+     */
+    public List<String> await() throws InterruptedException {
+        if (!started) {
+            return List.of();
+        }
+        queue.put(END);
+        dispatcher.join();
+        CompletableFuture.allOf(imports.toArray(CompletableFuture[]::new)).exceptionally(e -> null).join();
+        return List.copyOf(failures);
+    }
+
+    public void close() {
+        if (started) {
+            dispatcher.interrupt();
+            fileServer.stop();
+            executor.shutdownNow();
+            started = false;
+        }
+    }
+
+    private void dispatch() {
+        try {
+            while (true) {
+                permits.acquire();
+                var first = queue.take();
+                if (first == END) {
+                    return;
+                }
+                var batch = new ArrayList<Graph>();
+                batch.add(first);
+                if (batchable(first)) {
+                    while (batch.size() < batchSize && queue.peek() != null && queue.peek() != END && batchable(queue.peek())) {
+                        batch.add(queue.take());
                     }
-                    log.error(response.toString());
                 }
+                var future = submit(batch, 0).whenComplete((result, e) -> permits.release());
+                imports.add(future);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        return latch;
     }
 
-    public void start() {
-        if(!started) {
-            fileServer = new FileServer(SERVER_PORT, basePath, () -> latch);
-            started = true;
+    /**
+     * Concatenated graphs are only valid in text formats, compressed or not.
+     */
+    private static boolean batchable(Graph graph) {
+        return GraphFormat.of(graph.file()).filter(format -> format != GraphFormat.BINARY).isPresent();
+    }
+
+    private CompletableFuture<Void> submit(List<Graph> batch, int attempt) {
+        var id = importIds.incrementAndGet();
+        var first = batch.get(0).file();
+        var resource = "/import/" + run + "/" + id + "/" + first.substring(first.lastIndexOf('/') + 1);
+        var sourceUrl = "http://localhost:" + fileServer.port() + resource;
+        fileServer.register(resource, batch.stream().map(graph -> Path.of(basePath, graph.file())).toList());
+        return startImport(batch, sourceUrl)
+                .thenCompose(response -> poll(sourceUrl, System.nanoTime() + importTimeout.toNanos()))
+                .whenComplete((result, e) -> fileServer.unregister(resource))
+                .handle((result, e) -> {
+                    if (e == null) {
+                        log.info("Imported " + batch.size() + " graphs starting with " + first);
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    if (attempt < retries) {
+                        var delay = backoff.toMillis() << attempt;
+                        log.warn("Import of " + first + " failed, retrying in " + delay + " ms: " + cause(e).getMessage());
+                        var retry = CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor);
+                        return CompletableFuture.supplyAsync(() -> null, retry).thenCompose(x -> submit(batch, attempt + 1));
+                    }
+                    log.error("Import of " + first + " failed: " + cause(e).getMessage());
+                    batch.forEach(graph -> failures.add(graph.file()));
+                    return CompletableFuture.<Void>completedFuture(null);
+                })
+                .thenCompose(future -> future);
+    }
+
+    private CompletableFuture<Void> startImport(List<Graph> batch, String sourceUrl) {
+        var request = mapper.createObjectNode();
+        request.put("data", sourceUrl);
+        request.put("name", sourceUrl);
+        GraphFormat.of(batch.get(0).file()).ifPresent(format ->
+                request.put("format", format.getRdfFormat().getDefaultMIMEType()));
+        var graphs = request.putArray("replaceGraphs");
+        batch.forEach(graph -> graphs.add(graph.name()));
+
+        var post = HttpRequest.newBuilder(URI.create(repositoryUrl + "/import/upload/url"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(request.toString()))
+                .build();
+        return client.sendAsync(post, HttpResponse.BodyHandlers.ofString())
+                .thenAccept(response -> {
+                    if (response.statusCode() / 100 != 2) {
+                        throw new ImportException("HTTP " + response.statusCode() + " " + response.body());
+                    }
+                });
+    }
+
+    /**
+     * Polls the import status until GraphDB reports the import as done or failed.
+     */
+    private CompletableFuture<Void> poll(String sourceUrl, long deadline) {
+        var get = HttpRequest.newBuilder(URI.create(repositoryUrl + "/import/upload"))
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+        return client.sendAsync(get, HttpResponse.BodyHandlers.ofString())
+                .thenCompose(response -> {
+                    var status = status(response, sourceUrl);
+                    if (status.equals("DONE")) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    if (status.equals("ERROR")) {
+                        throw new ImportException("GraphDB reported an error importing " + sourceUrl);
+                    }
+                    if (System.nanoTime() > deadline) {
+                        throw new ImportException("Timeout importing " + sourceUrl);
+                    }
+                    var next = CompletableFuture.delayedExecutor(pollInterval.toMillis(), TimeUnit.MILLISECONDS, executor);
+                    return CompletableFuture.supplyAsync(() -> null, next).thenCompose(x -> poll(sourceUrl, deadline));
+                });
+    }
+
+    private String status(HttpResponse<String> response, String name) {
+        if (response.statusCode() / 100 != 2) {
+            throw new ImportException("HTTP " + response.statusCode() + " " + response.body());
+        }
+        try {
+            for (JsonNode entry : mapper.readTree(response.body())) {
+                if (name.equals(entry.path("name").asText())) {
+                    var message = entry.path("message").asText("");
+                    if (!message.isEmpty()) {
+                        log.debug(name + ": " + message);
+                    }
+                    return entry.path("status").asText("PENDING");
+                }
+            }
+            return "PENDING";
+        } catch (IOException e) {
+            throw new ImportException("Unexpected import status: " + e.getMessage());
         }
     }
 
-    public void close() {
-        if(started) {
-            fileServer.stop();
+    private static Throwable cause(Throwable e) {
+        while (e.getCause() != null && e instanceof CompletionException) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    static class ImportException extends RuntimeException {
+        ImportException(String message) {
+            super(message);
         }
     }
 }
@@ -0,0 +1,171 @@
+package ch.post.tools.seqeline.graphdb;
+
+import ch.post.tools.seqeline.process.GraphFormat;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.RDFHandlerWrapper;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams graphs into an RDF4J repository with the SPARQL Graph Store protocol, while they are generated.
+ * <p>
+ * Each upload replaces one named graph. The statements are sent with chunked transfer encoding as they are written,
+ * so neither the graph file nor the whole graph is needed up front. An upload which is not committed is aborted, the
+ * repository then never sees a complete request.
+ */
+@Slf4j
+public class GraphStoreUploader {
+
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final String repositoryUrl;
+
+    /**
+     * @param repositoryUrl RDF4J repository endpoint, e.g. http://localhost:7200/repositories/lineage
+     */
+    public GraphStoreUploader(String repositoryUrl) {
+        this.repositoryUrl = repositoryUrl.replaceAll("/+$", "");
+    }
+
+    /**
+     * Starts replacing a graph. Nothing is replaced unless the upload is committed.
+     *
+     * @throws UploadException if the repository cannot be reached
+     */
+    public Upload open(String graphName, GraphFormat format) {
+        try {
+            var url = new URL(repositoryUrl + "/rdf-graphs/service?graph=" + URLEncoder.encode(graphName, StandardCharsets.UTF_8));
+            var connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("PUT");
+            connection.setRequestProperty("Content-Type", format.getRdfFormat().getDefaultMIMEType() + "; charset=UTF-8");
+            connection.setDoOutput(true);
+            connection.setChunkedStreamingMode(CHUNK_SIZE);
+            return new Upload(graphName, format, connection);
+        } catch (IOException e) {
+            throw new UploadException("Upload of " + graphName + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Failure of the upload itself, as opposed to a failure of the generation feeding it.
+     */
+    public static class UploadException extends RuntimeException {
+        UploadException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Upload in progress. Statements passed to the handler are sent right away, committing the upload completes the
+     * request and waits for the repository to accept the graph. Closing an upload which was not committed aborts the
+     * request without completing it, so that the repository keeps the graph it had.
+     */
+    public static class Upload implements AutoCloseable {
+        private final String graphName;
+        private final HttpURLConnection connection;
+        private final OutputStream out;
+        private final RDFHandler handler;
+        private boolean committed;
+
+        private Upload(String graphName, GraphFormat format, HttpURLConnection connection) throws IOException {
+            this.graphName = graphName;
+            this.connection = connection;
+            this.out = new BufferedOutputStream(connection.getOutputStream(), CHUNK_SIZE);
+            this.handler = new RDFHandlerWrapper(Rio.createWriter(format.getRdfFormat(), out)) {
+                @Override
+                public void startRDF() {
+                    send(super::startRDF);
+                }
+
+                @Override
+                public void handleNamespace(String prefix, String uri) {
+                    send(() -> super.handleNamespace(prefix, uri));
+                }
+
+                @Override
+                public void handleStatement(Statement statement) {
+                    send(() -> super.handleStatement(statement));
+                }
+
+                @Override
+                public void endRDF() {
+                    send(super::endRDF);
+                }
+            };
+        }
+
+        private void send(Runnable write) {
+            try {
+                write.run();
+            } catch (RDFHandlerException e) {
+                throw failure(e);
+            }
+        }
+
+        /**
+         * Handler sending the statements. Its failures are reported as {@link UploadException}.
+         */
+        public RDFHandler handler() {
+            return handler;
+        }
+
+        /**
+         * Completes the request, the repository then replaces the graph.
+         *
+         * @throws UploadException if the repository did not accept the graph
+         */
+        public void commit() {
+            try {
+                out.close();
+                var code = connection.getResponseCode();
+                if (code / 100 != 2) {
+                    var message = error();
+                    connection.disconnect();
+                    throw new UploadException("Upload of " + graphName + " failed with HTTP " + code + ": " + message, null);
+                }
+                // Consume the response so that the connection is reused
+                try (var in = connection.getInputStream()) {
+                    in.readAllBytes();
+                }
+            } catch (IOException e) {
+                connection.disconnect();
+                throw failure(e);
+            }
+            committed = true;
+            log.debug("Uploaded " + graphName);
+        }
+
+        /**
+         * Aborts the upload unless it was committed.
+         */
+        @Override
+        public void close() {
+            if (!committed) {
+                // Drops the connection without the last chunk, the request is never complete
+                connection.disconnect();
+                log.debug("Aborted upload of " + graphName);
+            }
+        }
+
+        private UploadException failure(Exception e) {
+            return new UploadException("Upload of " + graphName + " failed: " + e.getMessage(), e);
+        }
+
+        private String error() throws IOException {
+            try (InputStream err = connection.getErrorStream()) {
+                return err == null ? "" : new String(err.readAllBytes(), StandardCharsets.UTF_8).strip();
+            }
+        }
+    }
+}
@@ -1,22 +1,52 @@
 package ch.post.tools.seqeline.metadata;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Slf4j
 public class MetadataFetcher {
+
+    private static final int FETCH_SIZE = 5000;
+
     private final String jdbcUrl;
     private final String username;
     private final String password;
@@ -65,4 +95,296 @@ public class MetadataFetcher {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Streams the columns of all relations as plain rows and writes the schema JSON relation by relation.
+     * Owners are fetched in parallel by workers having one connection each. Each owner is spooled to a temporary
+     * file, so that owners are written in the order of the owner query whatever the order they complete in.
+     * As the schema is looked up by name only, relations having the same name in several owners are merged and
+     * written after the others.
+     */
+    @SneakyThrows
+    public void fetchRelations(OutputStream outputStream, int threads) {
+        log.info("Fetching metadata ...");
+        var ownersQuery = query("metadata-owners.sql");
+        var columnsQuery = query("metadata-columns.sql");
+
+        List<String> owners = new ArrayList<>();
+        try (Connection connection = DriverManager.getConnection(jdbcUrl, username, password);
+             PreparedStatement statement = connection.prepareStatement(ownersQuery);
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                owners.add(resultSet.getString(1));
+            }
+        }
+
+        List<CompletableFuture<Spool>> spools = new ArrayList<>();
+        owners.forEach(owner -> spools.add(new CompletableFuture<>()));
+        var next = new AtomicInteger();
+        var workers = Math.max(1, Math.min(threads, owners.size()));
+        var executor = Executors.newFixedThreadPool(workers);
+        var mapper = new ObjectMapper();
+        long relations = 0;
+        try (JsonGenerator generator = mapper.createGenerator(outputStream)) {
+            for (int i = 0; i < workers; i++) {
+                executor.execute(() -> fetchOwners(owners, columnsQuery, next, spools));
+            }
+            List<Spool> fetched = new ArrayList<>();
+            Map<String, Integer> occurrences = new HashMap<>();
+            for (var future : spools) {
+                try {
+                    var spool = future.get();
+                    fetched.add(spool);
+                    spool.names().forEach(name -> occurrences.merge(name, 1, Integer::sum));
+                } catch (ExecutionException e) {
+                    throw e.getCause();
+                }
+            }
+            Map<String, FetchedRelation> shared = new LinkedHashMap<>();
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("relations");
+            for (int i = 0; i < owners.size(); i++) {
+                var spool = fetched.get(i);
+                try (JsonParser parser = mapper.createParser(spool.file())) {
+                    parser.nextToken();
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        var relation = parser.readValueAs(FetchedRelation.class);
+                        if (occurrences.get(relation.name()) > 1) {
+                            shared.merge(relation.name(), relation, FetchedRelation::merge);
+                        } else {
+                            write(generator, relation);
+                            relations++;
+                        }
+                    }
+                } finally {
+                    Files.delete(spool.file().toPath());
+                }
+                log.debug("Fetched " + spool.names().size() + " relations of " + owners.get(i));
+            }
+            for (var relation : shared.values()) {
+                write(generator, relation);
+                relations++;
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } finally {
+            executor.shutdownNow();
+            spools.forEach(spool -> spool.thenAccept(done -> done.file().delete()));
+        }
+        log.info("Fetched " + relations + " relations of " + owners.size() + " owners.");
+    }
+
+    private record Column(String name, String comment, String type) {
+    }
+
+    private record FetchedRelation(String name, String type, String comment, List<Column> columns) {
+
+        /**
+         * Relation of the same name in another owner, keeping this type and comment and adding the other columns.
+         */
+        FetchedRelation merge(FetchedRelation other) {
+            var names = columns.stream().map(Column::name).collect(Collectors.toSet());
+            var merged = new ArrayList<>(columns);
+            other.columns().stream().filter(column -> names.add(column.name())).forEach(merged::add);
+            return new FetchedRelation(name, type, comment, merged);
+        }
+    }
+
+    /**
+     * Relations of an owner, written as a JSON array.
+     *
+     * @param names names of the relations, in order
+     */
+    private record Spool(File file, List<String> names) {
+    }
+
+    /**
+     * Takes owners until there are none left, fetching them over a single connection.
+     */
+    private void fetchOwners(List<String> owners, String query, AtomicInteger next, List<CompletableFuture<Spool>> spools) {
+        int i = -1;
+        try (Connection connection = DriverManager.getConnection(jdbcUrl, username, password);
+             PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setFetchSize(FETCH_SIZE);
+            while ((i = next.getAndIncrement()) < owners.size()) {
+                spools.get(i).complete(fetchOwner(owners.get(i), statement));
+            }
+        } catch (Exception e) {
+            // Fails the owner being fetched, or the next one if the connection failed. Other workers take the owners
+            // left, and the failure is reported before any owner that no worker is left to fetch.
+            if (i < 0) {
+                i = next.getAndIncrement();
+            }
+            if (i < owners.size()) {
+                spools.get(i).completeExceptionally(e);
+            }
+        }
+    }
+
+    private Spool fetchOwner(String owner, PreparedStatement statement) throws Exception {
+        var file = File.createTempFile("seqeline-owner", ".json");
+        try (JsonGenerator generator = new JsonFactory().createGenerator(file, JsonEncoding.UTF8)) {
+            statement.setString(1, owner);
+            generator.writeStartArray();
+            List<String> names = new ArrayList<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                readRelations(resultSet, relation -> {
+                    names.add(relation.name());
+                    write(generator, relation);
+                });
+            }
+            generator.writeEndArray();
+            return new Spool(file, names);
+        } catch (Exception e) {
+            file.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Groups rows ordered by owner and relation, a relation is passed on when its last row has been read.
+     */
+    private static void readRelations(ResultSet resultSet, Consumer<FetchedRelation> consumer) throws SQLException {
+        FetchedRelation relation = null;
+        String owner = null;
+        while (resultSet.next()) {
+            var name = resultSet.getString("relation_name");
+            if (relation == null || !relation.name().equals(name) || !owner.equals(resultSet.getString("relation_owner"))) {
+                owner = resultSet.getString("relation_owner");
+                if (relation != null) {
+                    consumer.accept(relation);
+                }
+                relation = new FetchedRelation(name, resultSet.getString("relation_type"),
+                        resultSet.getString("relation_comment"), new ArrayList<>());
+            }
+            relation.columns().add(new Column(
+                    resultSet.getString("column_name"),
+                    resultSet.getString("column_comment"),
+                    resultSet.getString("data_type")));
+        }
+        if (relation != null) {
+            consumer.accept(relation);
+        }
+    }
+
+    /**
+     * Current time of the database, to be used as watermark of a fetch started now.
+     */
+    @SneakyThrows
+    public Timestamp databaseTime() {
+        try (Connection connection = DriverManager.getConnection(jdbcUrl, username, password);
+             PreparedStatement statement = connection.prepareStatement("SELECT SYSDATE FROM dual");
+             ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            return resultSet.getTimestamp(1);
+        }
+    }
+
+    /**
+     * Merges the relations changed since the watermark into a previously fetched schema. Relations which no longer
+     * exist are dropped. The other relations are copied as they were fetched, in their previous order.
+     * Like in a full fetch, relations are identified by name: a relation changed in one owner is fetched again with
+     * the relations of the same name in the other owners, and merged with them.
+     */
+    @SneakyThrows
+    public void fetchChanges(InputStream previousSchema, Timestamp since, OutputStream outputStream) {
+        log.info("Fetching metadata changed since " + since + " ...");
+        Map<String, FetchedRelation> changed = new LinkedHashMap<>();
+        Set<String> existing = new HashSet<>();
+        try (Connection connection = DriverManager.getConnection(jdbcUrl, username, password)) {
+            try (PreparedStatement statement = connection.prepareStatement(query("metadata-changed-columns.sql"))) {
+                statement.setFetchSize(FETCH_SIZE);
+                statement.setTimestamp(1, since);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    readRelations(resultSet, relation -> changed.merge(relation.name(), relation, FetchedRelation::merge));
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement(query("metadata-relations.sql"))) {
+                statement.setFetchSize(FETCH_SIZE);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        existing.add(resultSet.getString(1));
+                    }
+                }
+            }
+        }
+
+        var updated = changed.size();
+        var dropped = new AtomicLong();
+        var mapper = new ObjectMapper();
+        try (JsonParser parser = mapper.createParser(previousSchema);
+             JsonGenerator generator = mapper.createGenerator(outputStream)) {
+            parser.nextToken();
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var field = parser.currentName();
+                parser.nextToken();
+                if (!"relations".equals(field)) {
+                    generator.writeFieldName(field);
+                    generator.copyCurrentStructure(parser);
+                    continue;
+                }
+                generator.writeArrayFieldStart("relations");
+                Set<String> written = new HashSet<>();
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    JsonNode relation = parser.readValueAsTree();
+                    var name = relation.path("name").asText().toLowerCase();
+                    if (!existing.contains(name)) {
+                        dropped.incrementAndGet();
+                    } else if (!written.add(name)) {
+                        // Written once per owner by earlier versions, now merged
+                        dropped.incrementAndGet();
+                    } else if (changed.containsKey(name)) {
+                        write(generator, changed.remove(name));
+                    } else {
+                        generator.writeTree(relation);
+                    }
+                }
+                // Relations created since the previous fetch
+                changed.values().forEach(relation -> write(generator, relation));
+                changed.clear();
+                generator.writeEndArray();
+            }
+            if (!changed.isEmpty()) {
+                generator.writeArrayFieldStart("relations");
+                changed.values().forEach(relation -> write(generator, relation));
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+        }
+        log.info("Updated " + updated + " relations, dropped " + dropped.get() + ".");
+    }
+
+    /**
+     * Writes a relation (name, type, comment) with its columns, omitting null values.
+     */
+    @SneakyThrows
+    private static void write(JsonGenerator generator, FetchedRelation relation) {
+        generator.writeStartObject();
+        writeField(generator, "name", relation.name());
+        writeField(generator, "type", relation.type());
+        writeField(generator, "comment", relation.comment());
+        generator.writeArrayFieldStart("columns");
+        for (var column : relation.columns()) {
+            generator.writeStartObject();
+            writeField(generator, "name", column.name());
+            writeField(generator, "comment", column.comment());
+            writeField(generator, "type", column.type());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private static void writeField(JsonGenerator generator, String name, String value) throws IOException {
+        if (value != null) {
+            generator.writeStringField(name, value);
+        }
+    }
+
+    private String query(String resource) throws IOException {
+        try (var in = getClass().getClassLoader().getResourceAsStream(resource)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -1,24 +1,87 @@
 package ch.post.tools.seqeline.metadata;
 
 import ch.post.tools.seqeline.binding.Binding;
+import ch.post.tools.seqeline.binding.BindingSequence;
 import ch.post.tools.seqeline.binding.BindingType;
 import lombok.Getter;
+import lombok.SneakyThrows;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
 import java.util.List;
 
 public record Relation(String name, String type, String comment, List<Column> columns) {
 
     public Binding getBinding() {
-        var result = new Binding(name, BindingType.RELATION);
-        result.addType(type);
-        result.setComment(comment);
+        return new Template(this).instantiate();
+    }
+
+    /**
+     * Hash of the definition of the relation, changing whenever its generated bindings would change.
+     */
+    @SneakyThrows
+    public String fingerprint() {
+        var digest = MessageDigest.getInstance("SHA-256");
+        update(digest, name);
+        update(digest, type);
+        update(digest, comment);
         columns.forEach(column -> {
-            var binding = new Binding(column.name, BindingType.COLUMN);
-            binding.setComment(column.comment);
-            result.addChild(binding);
+            update(digest, column.name);
+            update(digest, column.comment);
         });
-        return result;
+        return HexFormat.of().formatHex(digest.digest(), 0, 16);
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            digest.update((byte) 1);
+        } else {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
     }
 
     public record Column(String name, String comment){}
+
+    /**
+     * Immutable form of a relation, from which a binding is instantiated on each reference. Cached by the schema and
+     * shared between generation threads.
+     */
+    public static final class Template {
+
+        private final String name;
+        private final String type;
+        private final String comment;
+        private final String[] columnNames;
+        private final String[] columnComments;
+
+        public Template(Relation relation) {
+            name = intern(relation.name);
+            type = relation.type;
+            comment = relation.comment;
+            columnNames = relation.columns.stream().map(column -> intern(column.name)).toArray(String[]::new);
+            columnComments = relation.columns.stream().map(Column::comment).toArray(String[]::new);
+        }
+
+        /**
+         * Creates the relation binding with its columns, their ids being allocated at once in the current sequence.
+         */
+        public Binding instantiate() {
+            var id = BindingSequence.allocate(1 + columnNames.length);
+            var result = new Binding(id, name, BindingType.RELATION);
+            result.addType(type);
+            result.setComment(comment);
+            for (int i = 0; i < columnNames.length; i++) {
+                var binding = new Binding(id + 1 + i, columnNames[i], BindingType.COLUMN);
+                binding.setComment(columnComments[i]);
+                result.addChild(binding);
+            }
+            return result;
+        }
+
+        private static String intern(String value) {
+            return value != null ? value.intern() : null;
+        }
+    }
 }
@@ -2,22 +2,34 @@ package ch.post.tools.seqeline.metadata;
 
 import ch.post.tools.seqeline.binding.Binding;
 import ch.post.tools.seqeline.binding.BindingType;
+import ch.post.tools.seqeline.cache.Manifest;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
+/**
+ * Relations known in the database. Populated once, then only read, so that it can be shared between generation threads.
+ */
 @Slf4j
 public class Schema {
 
-    private Map<String, Relation> relations = new HashMap<>();
+    private final Map<String, Relation> relations = new HashMap<>();
+
+    private SchemaSnapshot snapshot;
+
+    private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+
+    private final Map<String, Optional<Relation.Template>> templates = new ConcurrentHashMap<>();
 
     public Schema() {
     }
@@ -70,11 +82,27 @@ public class Schema {
         }
     }
 
-    @SneakyThrows
     public Schema(File schemaFile) {
+        this(schemaFile, Manifest.hash(schemaFile));
+    }
+
+    /**
+     * Loads the schema from its compiled snapshot, next to the metadata file. The snapshot is compiled when missing
+     * or compiled from other metadata.
+     *
+     * @param schemaHash content hash of the metadata file
+     */
+    @SneakyThrows
+    public Schema(File schemaFile, String schemaHash) {
         if(schemaFile.exists()) {
-            try(var in = new FileInputStream(schemaFile)) {
-                populate(in);
+            var snapshotFile = new File(schemaFile.getParentFile(), "schema.bin");
+            snapshot = SchemaSnapshot.open(snapshotFile, schemaHash).orElse(null);
+            if (snapshot == null) {
+                try (var in = new BufferedInputStream(new FileInputStream(schemaFile))) {
+                    populate(in);
+                }
+                log.info("Compiling schema snapshot ...");
+                SchemaSnapshot.write(relations.values(), snapshotFile, schemaHash);
             }
         } else {
             log.warn("No metadata for the current schema. Columns will not be detected. Consider running 'seqeline -b'.");
@@ -82,11 +110,29 @@ public class Schema {
         }
     }
 
+    /**
+     * Creates a new binding of the relation, from its template decoded on first use.
+     */
     public Optional<Binding> resolve(String name) {
-        return Optional.ofNullable(relations.get(name)).map(Relation::getBinding).map(binding->binding);
+        return templates.computeIfAbsent(name, key -> relation(key).map(Relation.Template::new))
+                .map(Relation.Template::instantiate);
+    }
+
+    public Optional<Relation> relation(String name) {
+        if (snapshot != null) {
+            return snapshot.get(name);
+        }
+        return Optional.ofNullable(relations.get(name));
+    }
+
+    /**
+     * Fingerprint of a relation as resolved by {@link #resolve(String)}, or "none" if it is not in the schema.
+     */
+    public String fingerprint(String name) {
+        return fingerprints.computeIfAbsent(name, key -> relation(key).map(Relation::fingerprint).orElse("none"));
     }
 
     public Stream<Relation> relations() {
-        return relations.values().stream();
+        return snapshot != null ? snapshot.relations() : relations.values().stream();
     }
 }
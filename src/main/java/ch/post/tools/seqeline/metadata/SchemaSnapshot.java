@@ -0,0 +1,191 @@
+package ch.post.tools.seqeline.metadata;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Compiled form of the schema metadata, memory-mapped and decoded on demand.
+ * <p>
+ * Layout: magic, version, content hash of the source file, relation count, an open-addressing hash
+ * table of relation offsets indexed by name, then the relations (name, type, comment, columns).
+ * Integers are 4 or 8 bytes, strings are a length followed by UTF-8 bytes, -1 standing for null.
+ */
+@Slf4j
+class SchemaSnapshot {
+
+    private static final int MAGIC = 0x53514c53; // SQLS
+
+    private static final int VERSION = 2;
+
+    // Hexadecimal SHA-256 of the source file
+    private static final int HASH_LENGTH = 64;
+
+    private static final int HEADER = 4 + 4 + HASH_LENGTH + 4 + 4;
+
+    private final ByteBuffer buffer;
+
+    private final int count;
+
+    private final int slots;
+
+    private SchemaSnapshot(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.count = buffer.getInt(8 + HASH_LENGTH);
+        this.slots = buffer.getInt(12 + HASH_LENGTH);
+    }
+
+    /**
+     * Opens the snapshot compiled from the given source.
+     *
+     * @param sourceHash content hash of the source file
+     * @return empty if the snapshot is missing, invalid or outdated
+     */
+    static Optional<SchemaSnapshot> open(File file, String sourceHash) {
+        if (!file.exists()) {
+            return Optional.empty();
+        }
+        try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION ||
+                    !Arrays.equals(hashBytes(sourceHash), readBytes(buffer, 8, HASH_LENGTH))) {
+                return Optional.empty();
+            }
+            return Optional.of(new SchemaSnapshot(buffer));
+        } catch (IOException e) {
+            log.warn("Cannot read schema snapshot " + file + ": " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    static void write(Collection<Relation> relations, File file, String sourceHash) throws IOException {
+        var slots = Integer.highestOneBit(Math.max(relations.size(), 1) * 2) * 2;
+        var table = new int[slots];
+        var temp = new File(file.getPath() + ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(hashBytes(sourceHash));
+            out.writeInt(relations.size());
+            out.writeInt(slots);
+            // Table placeholder, filled once the offsets are known
+            out.write(new byte[slots * 4]);
+            for (var relation : relations) {
+                var slot = slot(relation.name(), slots);
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & (slots - 1);
+                }
+                table[slot] = out.size();
+                writeString(out, relation.name());
+                writeString(out, relation.type());
+                writeString(out, relation.comment());
+                out.writeInt(relation.columns().size());
+                for (var column : relation.columns()) {
+                    writeString(out, column.name());
+                    writeString(out, column.comment());
+                }
+            }
+        }
+        try (var channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+            var index = ByteBuffer.allocate(slots * 4);
+            index.asIntBuffer().put(table);
+            channel.write(index, HEADER);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    Optional<Relation> get(String name) {
+        var slot = slot(name, slots);
+        int offset;
+        while ((offset = buffer.getInt(HEADER + slot * 4)) != 0) {
+            if (name.equals(readString(new int[]{offset}))) {
+                return Optional.of(read(offset));
+            }
+            slot = (slot + 1) & (slots - 1);
+        }
+        return Optional.empty();
+    }
+
+    int size() {
+        return count;
+    }
+
+    Stream<Relation> relations() {
+        return IntStream.range(0, slots)
+                .map(slot -> buffer.getInt(HEADER + slot * 4))
+                .filter(offset -> offset != 0)
+                .mapToObj(this::read);
+    }
+
+    private Relation read(int offset) {
+        var position = new int[]{offset};
+        var name = readString(position);
+        var type = readString(position);
+        var comment = readString(position);
+        var columnCount = readInt(position);
+        List<Relation.Column> columns = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            columns.add(new Relation.Column(readString(position), readString(position)));
+        }
+        return new Relation(name, type, comment, columns);
+    }
+
+    private int readInt(int[] position) {
+        var value = buffer.getInt(position[0]);
+        position[0] += 4;
+        return value;
+    }
+
+    private String readString(int[] position) {
+        var length = readInt(position);
+        if (length < 0) {
+            return null;
+        }
+        var bytes = new byte[length];
+        buffer.get(position[0], bytes);
+        position[0] += length;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] hashBytes(String hash) {
+        return Arrays.copyOf(hash.getBytes(StandardCharsets.US_ASCII), HASH_LENGTH);
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer, int offset, int length) {
+        var bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return bytes;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+        } else {
+            var bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static int slot(String name, int slots) {
+        int h = name.hashCode();
+        return (h ^ (h >>> 16)) & (slots - 1);
+    }
+}
@@ -0,0 +1,195 @@
+package ch.post.tools.seqeline.parser;
+
+import lombok.extern.slf4j.Slf4j;
+import org.antlr.v4.runtime.Lexer;
+import org.antlr.v4.runtime.atn.LexerATNSimulator;
+import org.antlr.v4.runtime.atn.ParserATNSimulator;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.dfa.DFAState;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Memory policy for the DFA shared by all lexer and parser instances of the grammar.
+ * The cache grows until it holds more states than the budget, then it is cleared between two parses.
+ */
+@Slf4j
+public final class DfaCache {
+
+    public static final long DEFAULT_BUDGET = 1_000_000;
+
+    // Parses missing more often than this delay the steady state
+    private static final double STEADY_MISS_RATE = 0.001;
+
+    private static final long start = System.nanoTime();
+
+    private static final AtomicLong steady = new AtomicLong(start);
+
+    private static final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private static final LongAdder hits = new LongAdder();
+
+    private static final LongAdder misses = new LongAdder();
+
+    private static final AtomicInteger clears = new AtomicInteger();
+
+    private static volatile long budget = DEFAULT_BUDGET;
+
+    private static volatile DFA[] lexerDfa = new DFA[0];
+
+    private static volatile DFA[] parserDfa = new DFA[0];
+
+    /**
+     * @param steadyMillis time from start until the end of the last parse missing the DFA more than occasionally
+     */
+    public record Statistics(long states, long hits, long misses, int clears, long steadyMillis) {
+        public double hitRate() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d states, %.1f%% hit rate, cleared %d times, steady after %d ms",
+                    states, hitRate() * 100, clears, steadyMillis);
+        }
+    }
+
+    /**
+     * DFA lookups done by the recognizers of a thread. Misses compute new states or edges.
+     */
+    record Lookups(long hits, long misses) {
+        Lookups minus(Lookups other) {
+            return new Lookups(hits - other.hits, misses - other.misses);
+        }
+    }
+
+    private DfaCache() {
+    }
+
+    /**
+     * Maximum number of DFA states kept, summed over the lexer and the parser.
+     */
+    public static void setBudget(long states) {
+        budget = states;
+    }
+
+    public static Statistics statistics() {
+        return new Statistics(size(), hits.sum(), misses.sum(), clears.get(), (steady.get() - start) / 1_000_000);
+    }
+
+    /**
+     * Lookups done so far by instrumented recognizers.
+     */
+    static Lookups lookups(Lexer lexer, org.antlr.v4.runtime.Parser parser) {
+        var lexerCounts = ((CountingLexerSimulator) lexer.getInterpreter()).counts;
+        var parserCounts = ((CountingParserSimulator) parser.getInterpreter()).counts;
+        return new Lookups(lexerCounts[0] + parserCounts[0], lexerCounts[1] + parserCounts[1]);
+    }
+
+    /**
+     * Accounts the lookups of a parse done by instrumented recognizers.
+     *
+     * @param before lookups of the recognizers when the parse started
+     * @return the lookups of the parse alone, not including those of other threads
+     */
+    static Lookups parsed(Lexer lexer, org.antlr.v4.runtime.Parser parser, Lookups before) {
+        var lookups = lookups(lexer, parser).minus(before);
+        hits.add(lookups.hits());
+        misses.add(lookups.misses());
+        if (lookups.misses() > (lookups.hits() + lookups.misses()) * STEADY_MISS_RATE) {
+            steady.accumulateAndGet(System.nanoTime(), Math::max);
+        }
+        return lookups;
+    }
+
+    static long size() {
+        return size(lexerDfa) + size(parserDfa);
+    }
+
+    /**
+     * Replaces the simulators of the recognizers with ones counting DFA hits and misses.
+     */
+    static void instrument(Lexer lexer, org.antlr.v4.runtime.Parser parser) {
+        var lexerInterpreter = lexer.getInterpreter();
+        lexerDfa = lexerInterpreter.decisionToDFA;
+        lexer.setInterpreter(new CountingLexerSimulator(lexer, lexerInterpreter));
+        var parserInterpreter = parser.getInterpreter();
+        parserDfa = parserInterpreter.decisionToDFA;
+        parser.setInterpreter(new CountingParserSimulator(parser, parserInterpreter));
+    }
+
+    /**
+     * Held while parsing, so that the cache is never cleared under a running parser.
+     */
+    static Lock usage() {
+        return lock.readLock();
+    }
+
+    /**
+     * Clears the cache if it exceeds the budget.
+     */
+    static void enforce(Lexer lexer, org.antlr.v4.runtime.Parser parser) {
+        if (size() <= budget) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            var size = size();
+            if (size > budget) {
+                log.info("Clearing DFA cache of " + size + " states ...");
+                lexer.getInterpreter().clearDFA();
+                parser.getInterpreter().clearDFA();
+                clears.incrementAndGet();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static long size(DFA[] decisions) {
+        // The simulators add states while holding the lock of the map
+        return Arrays.stream(decisions).mapToLong(dfa -> {
+            synchronized (dfa.states) {
+                return dfa.states.size();
+            }
+        }).sum();
+    }
+
+    private static class CountingLexerSimulator extends LexerATNSimulator {
+        // Hits and misses, only updated by the thread owning the lexer
+        private final long[] counts = new long[2];
+
+        CountingLexerSimulator(Lexer lexer, LexerATNSimulator original) {
+            super(lexer, original.atn, original.decisionToDFA, original.getSharedContextCache());
+        }
+
+        @Override
+        protected DFAState getExistingTargetState(DFAState s, int t) {
+            return count(super.getExistingTargetState(s, t), counts);
+        }
+    }
+
+    private static class CountingParserSimulator extends ParserATNSimulator {
+        private final long[] counts = new long[2];
+
+        CountingParserSimulator(org.antlr.v4.runtime.Parser parser, ParserATNSimulator original) {
+            super(parser, original.atn, original.decisionToDFA, original.getSharedContextCache());
+        }
+
+        @Override
+        protected DFAState getExistingTargetState(DFAState previousD, int t) {
+            return count(super.getExistingTargetState(previousD, t), counts);
+        }
+    }
+
+    private static DFAState count(DFAState state, long[] counts) {
+        counts[state != null ? 0 : 1]++;
+        return state;
+    }
+}
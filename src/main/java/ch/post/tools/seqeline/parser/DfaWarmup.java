@@ -0,0 +1,126 @@
+package ch.post.tools.seqeline.parser;
+
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.PriorityQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Warm-up corpus for the DFA cache. While recording, keeps the units which missed the DFA the most when parsed,
+ * i.e. which computed the most new states.
+ * Parsing them on the next start rebuilds most of the DFA before real work begins.
+ * <p>
+ * The corpus is a gzipped script with one unit per '/' terminated block.
+ */
+@Slf4j
+public final class DfaWarmup {
+
+    private static final int MAX_UNITS = 200;
+
+    private static final int MAX_UNIT_LENGTH = 100_000;
+
+    private static final String TERMINATOR = "\n/\n";
+
+    private static volatile DfaWarmup recorder;
+
+    private final PriorityQueue<Sample> samples = new PriorityQueue<>(Comparator.comparingLong(Sample::misses));
+
+    private record Sample(long misses, String unit) {
+    }
+
+    private DfaWarmup() {
+    }
+
+    /**
+     * Starts recording the units parsed from now on.
+     */
+    public static DfaWarmup record() {
+        recorder = new DfaWarmup();
+        return recorder;
+    }
+
+    static boolean recording() {
+        return recorder != null;
+    }
+
+    /**
+     * @param misses DFA misses of the parse of the unit, excluding those of concurrent parses
+     */
+    static void sample(String unit, long misses) {
+        var current = recorder;
+        if (current != null && misses > 0 && unit.length() <= MAX_UNIT_LENGTH) {
+            current.add(new Sample(misses, unit));
+        }
+    }
+
+    private synchronized void add(Sample sample) {
+        samples.add(sample);
+        if (samples.size() > MAX_UNITS) {
+            samples.remove();
+        }
+    }
+
+    /**
+     * Writes the recorded units, followed by the units of the previous corpus until it is full, unless nothing
+     * was recorded. Units still missing the DFA after the warm-up thus displace the oldest ones.
+     */
+    @SneakyThrows
+    public synchronized void save(File file) {
+        if (samples.isEmpty()) {
+            return;
+        }
+        var units = new LinkedHashSet<String>();
+        samples.forEach(sample -> units.add(sample.unit()));
+        if (file.exists()) {
+            try (var in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                for (var unit : new String(in.readAllBytes(), Charset.defaultCharset()).split(TERMINATOR)) {
+                    if (units.size() >= MAX_UNITS) {
+                        break;
+                    }
+                    if (!unit.isBlank()) {
+                        units.add(unit);
+                    }
+                }
+            }
+        }
+        file.getParentFile().mkdirs();
+        var temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (var out = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(temp)), Charset.defaultCharset())) {
+            for (var unit : units) {
+                out.write(unit);
+                out.write(TERMINATOR);
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        log.info("Saved " + units.size() + " DFA warm-up units to " + file + ", " + samples.size() + " new.");
+    }
+
+    /**
+     * Parses the corpus to populate the DFA cache. Parse errors are ignored.
+     */
+    @SneakyThrows
+    public static void warmUp(File file) {
+        if (!file.exists()) {
+            return;
+        }
+        var start = System.currentTimeMillis();
+        try (var in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            new Parser().parse(in);
+        } catch (ParseException e) {
+            log.debug("Errors in DFA warm-up corpus");
+        }
+        log.info("DFA warm-up took " + (System.currentTimeMillis() - start) + " ms, reached " + DfaCache.size() + " states.");
+    }
+}
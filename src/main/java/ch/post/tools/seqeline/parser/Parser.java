@@ -1,155 +1,308 @@
 package ch.post.tools.seqeline.parser;
 
+import ch.post.tools.seqeline.tree.Node;
+import ch.post.tools.seqeline.tree.TreeBuilder;
+import lombok.Getter;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.antlr.grammars.plsql.PlSqlLexer;
 import org.antlr.grammars.plsql.PlSqlParser;
 import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ErrorNode;
 import org.antlr.v4.runtime.tree.ParseTreeListener;
-import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.antlr.v4.runtime.tree.TerminalNode;
 import org.apache.commons.io.input.BOMInputStream;
-import org.apache.commons.text.StringEscapeUtils;
-import org.joox.Match;
-import org.xml.sax.SAXException;
 
 import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.Scanner;
 import java.util.Set;
-import java.util.regex.Pattern;
-
-import static org.joox.JOOX.$;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
 
 @Slf4j
 public class Parser {
 
-    private static final Pattern dollarLine = Pattern.compile("^.*\\$(IF|THEN|ELSE|END).*");
-    private static final Pattern javaSource = Pattern.compile("^CREATE OR REPLACE AND RESOLVE JAVA.*");
+    /**
+     * Prediction mode in which the last parse succeeded.
+     */
+    @Getter
+    private PredictionMode predictionMode;
+
+    private static final ThreadLocal<Recognizers> threadRecognizers = new ThreadLocal<>();
+
+    private final Executor executor;
 
-    public Match parse(InputStream inputStream) throws IOException, SAXException {
+    private final int window;
 
-        // Preprocess to ignore conditional compilation macros ($IF, ...)
-        // Also aborts when Java source is encountered
-        var scanner = new Scanner(new BOMInputStream(inputStream));
-        StringBuilder sb = new StringBuilder();
-        while (scanner.hasNextLine()) {
-            var line = scanner.nextLine();
-            if(!dollarLine.matcher(line).matches()) {
-                sb.append(line);
+    private final Consumer<String> errorLog;
+
+    public Parser() {
+        this(message -> log.error(message));
+    }
+
+    public Parser(Consumer<String> errorLog) {
+        this(null, 1, errorLog);
+    }
+
+    /**
+     * @param executor parses the units of a script in parallel, or null to parse them in the calling thread
+     * @param window maximum number of units in flight
+     * @param errorLog receives the syntax errors, with their line in the script
+     */
+    public Parser(Executor executor, int window, Consumer<String> errorLog) {
+        this.executor = executor;
+        this.window = executor != null ? Math.max(1, window) : 1;
+        this.errorLog = errorLog;
+    }
+
+    public Node parse(InputStream inputStream) throws IOException {
+
+        // Preprocess while reading, then cut into units parsed independently
+        var reader = new PreprocessingReader(new InputStreamReader(new BOMInputStream(inputStream), Charset.defaultCharset()));
+        var splitter = new UnitSplitter(reader);
+
+        // Keep a bounded window of units in flight and join them in script order
+        var parsed = new ArrayList<Unit>();
+        var pending = new ArrayDeque<FutureTask<Unit>>();
+        try {
+            UnitSplitter.Unit text;
+            while ((text = splitter.next()) != null) {
+                var unit = text;
+                var task = new FutureTask<>(() -> parseUnit(unit));
+                pending.add(task);
+                if (executor != null) {
+                    executor.execute(task);
+                }
+                if (pending.size() >= window) {
+                    parsed.add(join(pending.remove()));
+                }
             }
-            sb.append("\n");
-            if(javaSource.matcher(line).matches()) {
-                throw new ParseException(true);
+            while (!pending.isEmpty()) {
+                parsed.add(join(pending.remove()));
             }
+        } finally {
+            pending.forEach(task -> task.cancel(false));
+        }
+
+        predictionMode = parsed.stream().anyMatch(unit -> unit.predictionMode() == PredictionMode.LL) ?
+                PredictionMode.LL : PredictionMode.SLL;
+        if (parsed.stream().anyMatch(Unit::failed)) {
+            throw new ParseException();
+        }
+        return parsed.size() == 1 ? parsed.get(0).root() : TreeBuilder.join(parsed.stream().map(Unit::root).toList());
+    }
+
+    /**
+     * Waits for a unit and reports its errors. A unit not yet taken by the executor is parsed in the calling thread,
+     * so that files processed on the same executor never wait for units queued behind them.
+     */
+    @SneakyThrows
+    private Unit join(FutureTask<Unit> task) {
+        task.run();
+        Unit unit;
+        try {
+            unit = task.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+        unit.errors().forEach(errorLog);
+        return unit;
+    }
+
+    private record Unit(Node root, PredictionMode predictionMode, List<String> errors, boolean failed) {
+    }
+
+    private Unit parseUnit(UnitSplitter.Unit unit) {
+        Unit result;
+        Recognizers recognizers;
+        DfaCache.Lookups before;
+        DfaCache.usage().lock();
+        try {
+            recognizers = recognizers(unit.text());
+            before = DfaCache.lookups(recognizers.lexer(), recognizers.parser());
+            result = parseUnit(unit, recognizers);
+        } finally {
+            DfaCache.usage().unlock();
+            release(threadRecognizers.get());
+        }
+        var lookups = DfaCache.parsed(recognizers.lexer(), recognizers.parser(), before);
+        if (DfaWarmup.recording()) {
+            DfaWarmup.sample(unit.text().toString(), lookups.misses());
+        }
+        DfaCache.enforce(recognizers.lexer(), recognizers.parser());
+        return result;
+    }
+
+    /**
+     * Lexer and parser reused by a thread. All instances share the DFA of the grammar.
+     */
+    private record Recognizers(PlSqlLexer lexer, CommonTokenStream tokenStream, PlSqlParser parser) {
+    }
+
+    private static Recognizers recognizers(CharStream input) {
+        var current = threadRecognizers.get();
+        if (current == null) {
+            var lexer = new PlSqlLexer(input);
+            var parser = new PlSqlParser(new CommonTokenStream(lexer));
+            DfaCache.instrument(lexer, parser);
+            current = new Recognizers(lexer, (CommonTokenStream) parser.getTokenStream(), parser);
+            threadRecognizers.set(current);
+        } else {
+            current.lexer().setInputStream(input);
+            current.tokenStream().setTokenSource(current.lexer());
+            current.parser().setTokenStream(current.tokenStream());
+        }
+        return current;
+    }
+
+    /**
+     * Detaches the recognizers of a thread from the unit just parsed, so that its text and tokens can be collected
+     * while the thread stays alive.
+     */
+    private static void release(Recognizers recognizers) {
+        if (recognizers != null) {
+            recognizers.lexer().setInputStream(CharStreams.fromString(""));
+            recognizers.tokenStream().setTokenSource(recognizers.lexer());
+            recognizers.parser().setTokenStream(recognizers.tokenStream());
         }
+    }
 
-        var lexer = new PlSqlLexer(CharStreams.fromString(sb.toString()));
+    private Unit parseUnit(UnitSplitter.Unit unit, Recognizers recognizers) {
+        PredictionMode predictionMode;
+        var lexer = recognizers.lexer();
         List<String> errors = new ArrayList<>();
-        lexer.addErrorListener(new BaseErrorListener() {
+        List<String> messages = new ArrayList<>();
+        // Reported like ConsoleErrorListener, the line being counted from the start of the script
+        var errorListener = new BaseErrorListener() {
             @Override
-            public void syntaxError(Recognizer<?, ?> recognizer, Object o, int i, int i1, String s, RecognitionException e) {
-                errors.add(s);
+            public void syntaxError(Recognizer<?, ?> recognizer, Object o, int line, int position, String message, RecognitionException e) {
+                messages.add("line " + (unit.line() + line - 1) + ":" + position + " " + message);
             }
-        });
-        var tokenStream = new CommonTokenStream(lexer);
-        var parser = new PlSqlParser(tokenStream);
-
-        var memRatio = (double)Runtime.getRuntime().freeMemory() / (double)Runtime.getRuntime().totalMemory();
-        if(memRatio < 0.2) {
-            log.info("Clearing cache ...");
-            lexer.getInterpreter().clearDFA();
-            parser.getInterpreter().clearDFA();
-            Runtime.getRuntime().gc();
+        };
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(errorListener);
+        var tokenStream = recognizers.tokenStream();
+        var parser = recognizers.parser();
+
+        // The pruned tree is built while parsing, no parse tree is kept
+        parser.setBuildParseTree(false);
+        parser.removeParseListeners();
+
+        // Fast path: SLL prediction bailing out on the first error, full LL only when it fails
+        var pruning = new PruningListener(parser, errors);
+        parser.addParseListener(pruning);
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        try {
+            parser.sql_script();
+            predictionMode = PredictionMode.SLL;
+        } catch (ParseCancellationException e) {
+            log.debug("SLL parsing failed, falling back to LL");
+            tokenStream.seek(0);
+            parser.reset();
+            parser.removeParseListeners();
+            pruning = new PruningListener(parser, errors);
+            parser.addParseListener(pruning);
+            parser.addErrorListener(errorListener);
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            parser.sql_script();
+            predictionMode = PredictionMode.LL;
         }
+        parser.removeParseListeners();
 
-        parser.addErrorListener(new BaseErrorListener() {
-            @Override
-            public void syntaxError(Recognizer<?, ?> recognizer, Object o, int i, int i1, String s, RecognitionException e) {
-                errors.add(s);
-            }
-        });
-        var parseTree = parser.sql_script();
-        var walker = new ParseTreeWalker();
+        return new Unit(pruning.builder.build(), predictionMode, messages, !errors.isEmpty() || !messages.isEmpty());
+    }
 
-        var out = new ByteArrayOutputStream();
-        var writer = new BufferedWriter(new OutputStreamWriter(out));
-        writer.newLine();
-        var listener = new ParseTreeListener() {
+    /**
+     * Applies the pruning rules to the rule events emitted by the parser.
+     * <p>
+     * Left-recursive rules are entered again once their first operand is complete, the already built nodes of
+     * the operand are then moved into the enclosing node. Walking a complete parse tree gives the same tree.
+     */
+    static class PruningListener implements ParseTreeListener {
 
-            private String indent = "";
-            private boolean showTerminal = false;
-            private int ignoreDepth = 0;
+        private final PlSqlParser parser;
+        private final List<String> errors;
+        final TreeBuilder builder = new TreeBuilder();
+        private final Deque<Integer> marks = new ArrayDeque<>();
 
-            @SneakyThrows
-            @Override
-            public void visitTerminal(TerminalNode terminalNode) {
-                if (showTerminal && ignoreDepth == 0) {
-                    writer.write(indent + StringEscapeUtils.escapeXml11(terminalNode.toString()));
-                    writer.newLine();
-                }
-            }
+        private boolean showTerminal = false;
+        private int ignoreDepth = 0;
+        private ParserRuleContext exited;
+        private int exitedMark;
 
-            @Override
-            public void visitErrorNode(ErrorNode errorNode) {
-                errors.add(errorNode.toString());
+        PruningListener(PlSqlParser parser, List<String> errors) {
+            this.parser = parser;
+            this.errors = errors;
+        }
+
+        @Override
+        public void visitTerminal(TerminalNode terminalNode) {
+            if (showTerminal && ignoreDepth == 0) {
+                builder.token(terminalNode.toString());
             }
+        }
 
+        @Override
+        public void visitErrorNode(ErrorNode errorNode) {
+            errors.add(errorNode.toString());
+        }
 
-            @SneakyThrows
-            @Override
-            public void enterEveryRule(ParserRuleContext parserRuleContext) {
-                var name = name(parser, parserRuleContext);
-                if (ignore(name)) {
-                    ignoreDepth++;
-                }
-                if (ignoreDepth == 0) {
-                    if (show(name)) {
-                        writer.write(indent + "<" + name + ">");
-                        writer.newLine();
-                        indent = indent + "  ";
+        @Override
+        public void enterEveryRule(ParserRuleContext parserRuleContext) {
+            var name = name(parser, parserRuleContext);
+            var recursion = exited != null && exited.getParent() == parserRuleContext;
+            var mark = recursion ? exitedMark : builder.mark();
+            marks.push(mark);
+            exited = null;
+            if (ignore(name)) {
+                ignoreDepth++;
+            }
+            if (ignoreDepth == 0) {
+                if (show(name)) {
+                    if (recursion) {
+                        builder.wrap(name, mark);
+                    } else {
+                        builder.open(name);
                     }
                 }
-                if (terminal(name)) {
-                    showTerminal = true;
-                }
             }
+            if (terminal(name)) {
+                showTerminal = true;
+            }
+        }
 
-            @SneakyThrows
-            @Override
-            public void exitEveryRule(ParserRuleContext parserRuleContext) {
-                var name = name(parser, parserRuleContext);
-                if (ignoreDepth == 0) {
-                    if (show(name)) {
-                        indent = indent.substring(0, indent.length() - 2);
-                        writer.write(indent + "</" + name + ">");
-                        writer.newLine();
-                    }
-                }
-                if (ignore(name)) {
-                    ignoreDepth--;
-                }
-                if (terminal(name)) {
-                    showTerminal = false;
+        @Override
+        public void exitEveryRule(ParserRuleContext parserRuleContext) {
+            var name = name(parser, parserRuleContext);
+            if (ignoreDepth == 0) {
+                if (show(name)) {
+                    builder.close();
                 }
             }
-        };
-        walker.walk(listener, parseTree);
-        writer.flush();
-
-        if(errors.isEmpty()) {
-            return $(new ByteArrayInputStream(out.toByteArray()));
-        } else {
-            throw new ParseException();
+            if (ignore(name)) {
+                ignoreDepth--;
+            }
+            if (terminal(name)) {
+                showTerminal = false;
+            }
+            exited = parserRuleContext;
+            exitedMark = marks.pop();
         }
     }
 
     private static String name(PlSqlParser parser, ParserRuleContext parserRuleContext) {
-        return parserRuleContext.toString(parser, parserRuleContext.getParent())
-                .replaceAll("[\\[\\]]", "")
-                .trim();
+        return parser.getRuleNames()[parserRuleContext.getRuleIndex()];
     }
 
     private static boolean show(String name) {
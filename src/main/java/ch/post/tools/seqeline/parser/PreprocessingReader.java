@@ -0,0 +1,65 @@
+package ch.post.tools.seqeline.parser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.regex.Pattern;
+
+/**
+ * Reads source lines on demand, blanking conditional compilation macros ($IF, ...).
+ * Aborts with a skipped {@link ParseException} as soon as a Java source header is read.
+ * <p>
+ * Only the current line is held here. The preprocessed text is then held once per unit in flight, in the code point
+ * buffer built by {@link UnitSplitter} and read by the lexer, never as a whole script.
+ */
+class PreprocessingReader extends Reader {
+
+    private static final Pattern dollarLine = Pattern.compile("^.*\\$(IF|THEN|ELSE|END).*");
+    private static final String javaSource = "CREATE OR REPLACE AND RESOLVE JAVA";
+
+    private final BufferedReader in;
+
+    private String line = "";
+
+    private int position = 0;
+
+    PreprocessingReader(Reader in) {
+        this.in = new BufferedReader(in);
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (position == line.length() && !nextLine()) {
+            return -1;
+        }
+        var count = Math.min(length, line.length() - position);
+        line.getChars(position, position + count, buffer, offset);
+        position += count;
+        return count;
+    }
+
+    private boolean nextLine() throws IOException {
+        var next = in.readLine();
+        if (next == null) {
+            return false;
+        }
+        if (next.startsWith(javaSource)) {
+            throw new ParseException(true);
+        }
+        if (next.indexOf('$') >= 0 && dollarLine.matcher(next).matches()) {
+            line = "\n";
+        } else {
+            line = next + "\n";
+        }
+        position = 0;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
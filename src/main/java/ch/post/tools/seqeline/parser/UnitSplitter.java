@@ -0,0 +1,145 @@
+package ch.post.tools.seqeline.parser;
+
+import org.antlr.v4.runtime.CodePointBuffer;
+import org.antlr.v4.runtime.CodePointCharStream;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+/**
+ * Cuts a script into top-level units at SQL*Plus '/' terminator lines.
+ * Terminators inside string literals, quoted identifiers and comments are ignored.
+ * <p>
+ * Units are read one at a time. Their lines are appended directly to the code point buffer read by the lexer, which
+ * uses one byte per char for Latin-1 sources, and a new buffer is started for each unit.
+ */
+class UnitSplitter {
+
+    private static final int INITIAL_SIZE = 4096;
+
+    private final BufferedReader in;
+    private CodePointBuffer.Builder unit = CodePointBuffer.builder(INITIAL_SIZE);
+    private char[] line = new char[256];
+    private int lines = 0;
+    private int start = 1;
+    private boolean blank = true;
+    private boolean returned = false;
+
+    private boolean inString = false;
+    private char quoteEnd = 0;
+    private boolean inIdentifier = false;
+    private boolean inComment = false;
+
+    UnitSplitter(Reader reader) {
+        in = reader instanceof BufferedReader buffered ? buffered : new BufferedReader(reader);
+    }
+
+    /**
+     * Text of a unit, with the line of the script on which it starts.
+     */
+    record Unit(CodePointCharStream text, int line) {
+    }
+
+    /**
+     * @return the next unit, or null at the end of the script. An empty script has one empty unit.
+     */
+    Unit next() throws IOException {
+        String text;
+        while ((text = in.readLine()) != null) {
+            lines++;
+            if (isTerminator(text)) {
+                if (!blank) {
+                    return take();
+                }
+                unit = CodePointBuffer.builder(INITIAL_SIZE);
+                start = lines + 1;
+            } else {
+                scan(text);
+                blank = blank && text.isBlank();
+                append(text);
+            }
+        }
+        if (!returned || !blank) {
+            return take();
+        }
+        return null;
+    }
+
+    private void append(String text) {
+        var length = text.length() + 1;
+        if (line.length < length) {
+            line = new char[Math.max(length, line.length * 2)];
+        }
+        text.getChars(0, text.length(), line, 0);
+        line[length - 1] = '\n';
+        unit.append(CharBuffer.wrap(line, 0, length));
+    }
+
+    private Unit take() {
+        var result = new Unit(CodePointCharStream.fromBuffer(unit.build()), start);
+        unit = CodePointBuffer.builder(INITIAL_SIZE);
+        start = lines + 1;
+        blank = true;
+        returned = true;
+        return result;
+    }
+
+    private boolean isTerminator(String line) {
+        return !inString && !inIdentifier && !inComment && line.strip().equals("/");
+    }
+
+    private void scan(String line) {
+        int i = 0;
+        while (i < line.length()) {
+            var c = line.charAt(i);
+            var next = i + 1 < line.length() ? line.charAt(i + 1) : 0;
+            if (inComment) {
+                if (c == '*' && next == '/') {
+                    inComment = false;
+                    i++;
+                }
+            } else if (inString) {
+                if (quoteEnd != 0) {
+                    if (c == quoteEnd && next == '\'') {
+                        inString = false;
+                        quoteEnd = 0;
+                        i++;
+                    }
+                } else if (c == '\'') {
+                    if (next == '\'') {
+                        i++;
+                    } else {
+                        inString = false;
+                    }
+                }
+            } else if (inIdentifier) {
+                if (c == '"') {
+                    inIdentifier = false;
+                }
+            } else if (c == '-' && next == '-') {
+                return;
+            } else if (c == '/' && next == '*') {
+                inComment = true;
+                i++;
+            } else if (c == '\'') {
+                inString = true;
+                if (i > 0 && (line.charAt(i - 1) == 'q' || line.charAt(i - 1) == 'Q') && next != 0) {
+                    // Alternative quoting: q'[...]'
+                    quoteEnd = switch (next) {
+                        case '[' -> ']';
+                        case '{' -> '}';
+                        case '(' -> ')';
+                        case '<' -> '>';
+                        default -> next;
+                    };
+                    i++;
+                }
+            } else if (c == '"') {
+                inIdentifier = true;
+            }
+            i++;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package ch.post.tools.seqeline.process;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.rio.RDFHandler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.eclipse.rdf4j.model.util.Statements.statement;
+import static org.eclipse.rdf4j.model.util.Values.iri;
+
+/**
+ * Dependencies between routines found at call sites, by global routine name ("package.routine" or "routine").
+ * The graphs of all files are merged into one, from which the dependency summary of code-depenencies.sparql is
+ * emitted.
+ */
+public class CallGraph {
+
+    private final Map<String, Set<String>> dependencies = new TreeMap<>();
+
+    public synchronized void add(String caller, String callee) {
+        if (!caller.equals(callee)) {
+            dependencies.computeIfAbsent(caller, c -> new TreeSet<>()).add(callee);
+        }
+    }
+
+    public synchronized void merge(CallGraph other) {
+        other.dependencies.forEach((caller, callees) -> callees.forEach(callee -> add(caller, callee)));
+    }
+
+    public synchronized int size() {
+        return dependencies.values().stream().mapToInt(Set::size).sum();
+    }
+
+    /**
+     * Emits the routines as members of their package and the dependencies between them.
+     */
+    public synchronized void write(IRI graph, String dataNamespace, String schemaNamespace, RDFHandler handler) {
+        var member = iri(schemaNamespace, "member");
+        var dependency = iri(schemaNamespace, "dependency");
+        handler.startRDF();
+        handler.handleNamespace("line", schemaNamespace);
+        handler.handleNamespace("line_data", dataNamespace);
+        var routines = new TreeSet<String>();
+        dependencies.forEach((caller, callees) -> {
+            routines.add(caller);
+            routines.addAll(callees);
+        });
+        for (var routine : routines) {
+            var separator = routine.lastIndexOf('.');
+            if (separator > 0) {
+                handler.handleStatement(statement(iri(dataNamespace, routine.substring(0, separator)), member,
+                        iri(dataNamespace, routine), graph));
+            }
+        }
+        dependencies.forEach((caller, callees) -> callees.forEach(callee ->
+                handler.handleStatement(statement(iri(dataNamespace, caller), dependency, iri(dataNamespace, callee), graph))));
+        handler.endRDF();
+    }
+
+    /**
+     * Writes one "caller,callee" line per dependency, with a header.
+     */
+    public synchronized void writeCsv(Writer writer) throws IOException {
+        writer.write("caller,callee\n");
+        for (var entry : dependencies.entrySet()) {
+            for (var callee : entry.getValue()) {
+                writer.write(csv(entry.getKey()) + "," + csv(callee) + "\n");
+            }
+        }
+    }
+
+    public static CallGraph readCsv(Reader reader) throws IOException {
+        var result = new CallGraph();
+        var lines = new BufferedReader(reader);
+        lines.readLine();
+        String line;
+        while ((line = lines.readLine()) != null) {
+            var fields = parseCsv(line);
+            if (fields.length == 2) {
+                result.add(fields[0], fields[1]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes the graph in Graphviz format, routines being clustered by package.
+     */
+    public synchronized void writeDot(Writer writer) throws IOException {
+        var packages = new TreeMap<String, Set<String>>();
+        dependencies.forEach((caller, callees) -> {
+            addToPackage(packages, caller);
+            callees.forEach(callee -> addToPackage(packages, callee));
+        });
+        writer.write("digraph dependencies {\n");
+        writer.write("  node [shape=box];\n");
+        int cluster = 0;
+        for (var entry : packages.entrySet()) {
+            var indent = "  ";
+            if (!entry.getKey().isEmpty()) {
+                writer.write("  subgraph cluster_" + cluster++ + " {\n");
+                writer.write("    label=" + dot(entry.getKey()) + ";\n");
+                indent = "    ";
+            }
+            for (var routine : entry.getValue()) {
+                writer.write(indent + dot(routine) + " [label=" + dot(routine.substring(routine.lastIndexOf('.') + 1)) + "];\n");
+            }
+            if (!entry.getKey().isEmpty()) {
+                writer.write("  }\n");
+            }
+        }
+        for (var entry : dependencies.entrySet()) {
+            for (var callee : entry.getValue()) {
+                writer.write("  " + dot(entry.getKey()) + " -> " + dot(callee) + ";\n");
+            }
+        }
+        writer.write("}\n");
+    }
+
+    private static void addToPackage(Map<String, Set<String>> packages, String routine) {
+        var separator = routine.lastIndexOf('.');
+        var pack = separator > 0 ? routine.substring(0, separator) : "";
+        packages.computeIfAbsent(pack, p -> new TreeSet<>()).add(routine);
+    }
+
+    private static String dot(String id) {
+        return "\"" + id.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static String csv(String field) {
+        return field.contains(",") || field.contains("\"") ? "\"" + field.replace("\"", "\"\"") + "\"" : field;
+    }
+
+    private static String[] parseCsv(String line) {
+        var fields = new ArrayList<String>();
+        var field = new StringBuilder();
+        var quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            var c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(String[]::new);
+    }
+}
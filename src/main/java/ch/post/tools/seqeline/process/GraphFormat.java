@@ -0,0 +1,55 @@
+package ch.post.tools.seqeline.process;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.eclipse.rdf4j.rio.RDFFormat;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Serialization of graph files. Each format can be gzip-compressed, which adds ".gz" to the file extension.
+ */
+@RequiredArgsConstructor
+public enum GraphFormat {
+    TRIG(RDFFormat.TRIG),
+    NQUADS(RDFFormat.NQUADS),
+    BINARY(RDFFormat.BINARY);
+
+    public static final String GZIP_EXTENSION = ".gz";
+
+    @Getter
+    private final RDFFormat rdfFormat;
+
+    public String extension(boolean gzip) {
+        return "." + rdfFormat.getDefaultFileExtension() + (gzip ? GZIP_EXTENSION : "");
+    }
+
+    /**
+     * Recognizes the format of a graph file from its extension, compressed or not.
+     */
+    public static Optional<GraphFormat> of(String fileName) {
+        var name = isCompressed(fileName) ? fileName.substring(0, fileName.length() - GZIP_EXTENSION.length()) : fileName;
+        return Arrays.stream(values())
+                .filter(format -> name.endsWith(format.extension(false)))
+                .findFirst();
+    }
+
+    /**
+     * Opens a graph file for reading, decompressing it if needed.
+     */
+    public static InputStream read(File file) throws IOException {
+        var in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        return isCompressed(file.getName()) ? new GZIPInputStream(in, 1 << 16) : in;
+    }
+
+    public static boolean isCompressed(String fileName) {
+        return fileName.endsWith(GZIP_EXTENSION);
+    }
+}
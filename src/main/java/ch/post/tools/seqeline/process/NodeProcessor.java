@@ -4,13 +4,20 @@ import ch.post.tools.seqeline.binding.Binding;
 import ch.post.tools.seqeline.binding.BindingType;
 import ch.post.tools.seqeline.metadata.Schema;
 import ch.post.tools.seqeline.stack.*;
+import ch.post.tools.seqeline.tree.Node;
+import ch.post.tools.seqeline.tree.Nodes;
 import com.google.common.collect.Streams;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
-import org.joox.Match;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
@@ -20,7 +27,61 @@ public class NodeProcessor {
     private final Stack stack;
     private final Schema schema;
 
-    public void process(Match node) {
+    /**
+     * Pending work: nodes to visit, frames to push, {@link #POP} markers and actions.
+     */
+    private final Deque<Object> work = new ArrayDeque<>();
+
+    /**
+     * Work scheduled by the current step, in execution order.
+     */
+    private final List<Object> steps = new ArrayList<>();
+
+    private static final Object POP = new Object();
+
+    /**
+     * Names looked up in the schema so far, including the ones not found.
+     */
+    private final Set<String> relations = new HashSet<>();
+
+    /**
+     * Routines being processed, innermost first.
+     */
+    private final Deque<Binding> routines = new ArrayDeque<>();
+
+    /**
+     * Routine calls, attributed to the outermost routine containing them.
+     */
+    @Getter
+    private final List<Call> calls = new ArrayList<>();
+
+    public record Call(Binding caller, Binding callee) {
+    }
+
+    /**
+     * Processes a tree iteratively, its depth is not bounded by the thread stack.
+     */
+    public void process(Node node) {
+        work.push(node);
+        while (!work.isEmpty()) {
+            var step = work.pop();
+            if (step instanceof Node next) {
+                visit(next);
+            } else if (step instanceof Frame frame) {
+                stack.push(frame);
+            } else if (step == POP) {
+                stack.pop();
+            } else {
+                ((Runnable) step).run();
+            }
+            for (int i = steps.size() - 1; i >= 0; i--) {
+                work.push(steps.get(i));
+            }
+            steps.clear();
+        }
+    }
+
+    private void visit(Node node) {
         if(node.isEmpty()) {
             return;
         }
@@ -37,136 +98,181 @@ public class NodeProcessor {
             case "create_package_body" -> {
                 var pack = binding(identifier(node.child("package_name")), BindingType.PACKAGE);
                 context().declare(pack);
-                stack.execute(new LexicalScope(pack), processSiblings(node.child("package_name")));
+                enter(new LexicalScope(pack));
+                processSiblings(node.child("package_name"));
+                exit();
             }
 
             case "variable_declaration" -> {
                 var variable = binding(identifier(node), BindingType.VARIABLE);
                 context().declare(variable);
-                stack.execute(new Assignment(variable), processSiblings(node.child(0)));
+                enter(new Assignment(variable));
+                processSiblings(node.child(0));
+                exit();
             }
 
             case "procedure_body", "function_body", "create_procedure_body", "create_function_body" -> {
-                var routineName = node.child("procedure_name,function_name");
+                var routineName = node.child("procedure_name", "function_name");
                 if(routineName.isEmpty()) {
                     routineName = node;
                 }
                 var routine = binding(identifier(routineName), BindingType.ROUTINE);
                 context().declare(routine);
 
-                stack.execute(new LexicalScope(routine), () -> {
+                enter(new LexicalScope(routine));
+                then(() -> {
+                    routines.push(routine);
                     var i = new AtomicInteger(0);
-                    node.children("parameter").children("parameter_name").each().stream()
+                    node.children("parameter").children("parameter_name").stream()
                             .map(param -> binding(identifier(param), BindingType.PARAMETER)
                                     .position(i.getAndIncrement()))
                             .forEach(param -> context().declare(param));
-                    processChildren(node.child("seq_of_declare_specs")).run();
-                    processChildren(node.child("body")).run();
                 });
+                processChildren(node.child("seq_of_declare_specs"));
+                processChildren(node.child("body"));
+                then(routines::pop);
+                exit();
             }
 
-            case "call_statement" -> stack.execute(new RoutineCall(), () -> {
-                // Name
-                var qualifiedName = QualifiedName.builder().type(BindingType.ROUTINE);
-                var names = node.find("routine_name").find("id_expression");
-                if(names.each().size() == 2) {
-                    qualifiedName.prefix(text(names.first())).name(text(names.last()));
-                } else {
-                    qualifiedName.name(text(names.first()));
-                }
-                var calledName = qualifiedName.build();
-                handleCall(calledName, node.children("argument"));
-            });
+            case "call_statement" -> {
+                enter(new RoutineCall());
+                then(() -> {
+                    // Name
+                    var qualifiedName = QualifiedName.builder().type(BindingType.ROUTINE);
+                    var names = node.find("routine_name").find("id_expression");
+                    if(names.size() == 2) {
+                        qualifiedName.prefix(names.first().text()).name(names.last().text());
+                    } else {
+                        qualifiedName.name(names.first().text());
+                    }
+                    var calledName = qualifiedName.build();
+                    handleCall(calledName, node.children("argument"));
+                });
+                exit();
+            }
 
-            case "return_statement" ->
-                stack.execute(new Wrapper(new Binding("[return]", BindingType.RETURN)), processChildren(node));
+            case "return_statement" -> {
+                enter(new Wrapper(new Binding("[return]", BindingType.RETURN)));
+                processChildren(node);
+                exit();
+            }
 
             case "cursor_declaration" -> {
                 var cursor = binding(identifier(node), BindingType.CURSOR);
                 context().declare(cursor);
-                stack.execute(new LexicalScope(cursor), () -> {
+                enter(new LexicalScope(cursor));
+                then(() -> {
                     var i = new AtomicInteger(0);
-                    node.children("parameter_spec").children("parameter_name").each().stream()
+                    node.children("parameter_spec").children("parameter_name").stream()
                             .map(param -> binding(identifier(param), BindingType.PARAMETER).position(i.getAndIncrement()))
                             .forEach(param -> context().declare(param));
-                    stack.execute(new Wrapper(new Binding("[cursor]", BindingType.RETURN)), ()->process(node.child("select_only_statement")));
+                    enter(new Wrapper(new Binding("[cursor]", BindingType.RETURN)));
+                    then(node.child("select_only_statement"));
+                    exit();
                 });
+                exit();
             }
 
             case "fetch_statement" -> {
                 var cursorName = node.child("cursor_name");
                 var source = resolveExisting(cursorName.find("id_expression").first());
-                cursorName.nextAll().find("id_expression").each().stream()
+                cursorName.nextAll().find("id_expression").stream()
                         .map(this::resolveExisting)
                         .forEach(source::addOutput);
             }
 
-            case "assignment_statement" ->
-                stack.execute(new Assignment(), processChildren(node));
+            case "assignment_statement" -> {
+                enter(new Assignment());
+                processChildren(node);
+                exit();
+            }
 
             case "if_statement", "simple_case_statement", "simple_case_when_part", "searched_case_when_part" -> {
                 // TODO: consider effects
-                stack.execute(new IgnoreReturn(), () -> process(node.child(0)));
-                processSiblings(node.child(0)).run();
+                enter(new IgnoreReturn());
+                then(node.child(0));
+                exit();
+                processSiblings(node.child(0));
             }
 
-            case "loop_statement" -> stack.execute(new LexicalScope(), () -> {
-                // TODO: consider effects
-                var loopParam = node.child("cursor_loop_param");
-                if(loopParam.child("record_name").isNotEmpty()) {
-                    stack.execute(new Assignment(resolveNew(loopParam.child("record_name"), BindingType.STRUCTURE)),
-                            () -> process(loopParam.child("cursor_name")));
-                }
-                process(node.children("seq_of_statements"));
-            });
+            case "loop_statement" -> {
+                enter(new LexicalScope());
+                then(() -> {
+                    // TODO: consider effects
+                    var loopParam = node.child("cursor_loop_param");
+                    if(loopParam.child("record_name").isNotEmpty()) {
+                        enter(new Assignment(resolveNew(loopParam.child("record_name"), BindingType.STRUCTURE)));
+                        then(loopParam.child("cursor_name"));
+                        exit();
+                    }
+                });
+                node.children("seq_of_statements").forEach(this::then);
+                exit();
+            }
 
             case "query_block" -> {
                 if (node.child("into_clause").isNotEmpty()) {
-                    stack.execute(new MultipleAssignment(intoVariables(node)),
-                            () -> stack.execute(new SelectStatement(), processChildren(node)));
+                    enter(new MultipleAssignment(intoVariables(node)));
+                    enter(new SelectStatement());
+                    processChildren(node);
+                    exit();
+                    exit();
                 } else {
-                    stack.execute(new SelectStatement(), processChildren(node));
+                    enter(new SelectStatement());
+                    processChildren(node);
+                    exit();
                 }
             }
 
             case "into_clause" -> skip();
 
-            case "select_only_statement" ->
-                stack.execute(new LexicalScope(), processChildren(node));
+            case "select_only_statement" -> {
+                enter(new LexicalScope());
+                processChildren(node);
+                exit();
+            }
 
 
             case "with_clause" ->
-                node.find("query_name").each().forEach(child -> {
+                node.find("query_name").forEach(child -> then(() -> {
                     var name = binding(child, BindingType.STRUCTURE);
-                    stack.execute(new Children(name), ()->process(child.nextAll("subquery").first()));
-                    context().declare(name);
-                });
+                    enter(new Children(name));
+                    then(child.nextAll("subquery").first());
+                    exit();
+                    then(() -> context().declare(name));
+                }));
 
             case "group_by_clause" -> skip();
 
-            case "selected_list" ->
-                stack.execute(new SelectStatement.SelectList(), () ->
-                        node.children("select_list_elements").children().each().forEach(child -> {
-                            if (child.is("column_alias")) {
-                                Binding alias = binding(child, BindingType.ALIAS);
-                                context().declare(alias);
-                                context().returnBinding(alias);
-                                stack.execute(new Assignment(alias), () -> process(child.prev()));
-                            } else {
-                                process(child.prev());
-                                if (child.next().isEmpty()) {
-                                    process(child);
-                                }
-                            }
-                        }));
+            case "selected_list" -> {
+                enter(new SelectStatement.SelectList());
+                node.children("select_list_elements").children().forEach(child -> {
+                    if (child.is("column_alias")) {
+                        then(() -> {
+                            Binding alias = binding(child, BindingType.ALIAS);
+                            context().declare(alias);
+                            context().returnBinding(alias);
+                            enter(new Assignment(alias));
+                            then(child.prev());
+                            exit();
+                        });
+                    } else {
+                        then(child.prev());
+                        if (child.next().isEmpty()) {
+                            then(child);
+                        }
+                    }
+                });
+                exit();
+            }
 
             case "single_table_insert" -> {
-                var tableName = text(identifier(node.child("insert_into_clause").find("tableview_name")));
-                var table = stack.root().declare(schema.resolve(tableName).orElse(new Binding(tableName, BindingType.RELATION)));
+                var tableName = identifier(node.child("insert_into_clause").find("tableview_name").first()).text();
+                var table = stack.root().declare(relation(tableName).orElse(new Binding(tableName, BindingType.RELATION)));
                 List<Binding> targets;
                 var columns = node.child("insert_into_clause").find("column_name");
                 if(columns.isNotEmpty()) {
-                    targets = columns.each().stream()
+                    targets = columns.stream()
                             .map(column -> binding(column, BindingType.COLUMN))
                             .map(table::addChild)
                             .toList();
@@ -174,35 +280,43 @@ public class NodeProcessor {
                     targets = table.children().toList();
                 }
 
-                Stream<Match> sources = node.child("values_clause").child("expressions").children().each().stream();
+                Stream<Node> sources = node.child("values_clause").child("expressions").children().stream();
 
                 Streams.zip(sources, targets.stream(), Map::entry)
-                        .forEach(entry -> stack.execute(new Assignment(entry.getValue()), () -> process(entry.getKey())));
+                        .forEach(entry -> {
+                            enter(new Assignment(entry.getValue()));
+                            then(entry.getKey());
+                            exit();
+                        });
             }
 
             case "update_statement", "delete_statement" -> skip(); //TODO
 
             case "tableview_name" -> {
-                var struct = schema.resolve(text(identifier(node)))
+                var struct = relation(identifier(node).text())
                         .map(relation -> stack.root().declare(relation))
                         .orElse(resolveNew(node, BindingType.STRUCTURE));
                 context().returnBinding(struct);
             }
 
             case "general_element" -> {
-                stack.execute(new Children(true), processChildren(node));
+                enter(new Children(true));
+                processChildren(node);
+                exit();
             }
 
             case "general_element_part" -> {
                 var arguments = node.children("argument");
-                var name = text(node.child("id_expression"));
+                var name = node.child("id_expression").text();
                 if(arguments.isNotEmpty() && !isBuiltin(name)) {
-                    stack.execute(new RoutineCall(), () -> {
+                    enter(new RoutineCall());
+                    then(() -> {
                         var calledName = QualifiedName.builder().type(BindingType.ROUTINE).name(name).build();
                         handleCall(calledName, node.children("argument"));
                     });
+                    exit();
                 } else {
-                    processChildren(node).run();
+                    processChildren(node);
                 }
             }
 
@@ -210,87 +324,126 @@ public class NodeProcessor {
                 if(node.next("id_expression").isEmpty()) {
                     var id = resolveNew(node, BindingType.FIELD);
                     context().returnBinding(id);
-                    node.prev("id_expression").each().forEach(structure ->
-                            context().resolve(QualifiedName.of(text(structure))).ifPresent(r -> r.addChild(id)));
+                    var structure = node.prev("id_expression");
+                    if(structure.isNotEmpty()) {
+                        context().resolve(QualifiedName.of(structure.text())).ifPresent(r -> r.addChild(id));
+                    }
                 }
             }
 
             case "join_clause", "where_clause" -> {
-                stack.execute(new SelectStatement.EffectClause(), processChildren(node));
+                enter(new SelectStatement.EffectClause());
+                processChildren(node);
+                exit();
             }
 
             case "create_view" -> {
                 // TODO: correct handling of output column mapping
                 var name = node.find("id_expression").first();
-                var view = schema.resolve(text(name))
+                var view = relation(name.text())
                         .map(relation -> stack.root().declare(relation))
                         .orElse(resolveNew(name, BindingType.RELATION).addType("view"));
-                var select = node.child("select_only_statement").first();
+                var select = node.child("select_only_statement");
                 var columns = node.child("view_options").find("table_alias");
                 if(columns.isNotEmpty()) {
-                    var targets = columns.each().stream().map(column -> binding(identifier(column), BindingType.COLUMN)).toList();
+                    var targets = columns.stream().map(column -> binding(identifier(column), BindingType.COLUMN)).toList();
                     targets.forEach(view::addChild);
-                    stack.execute(new MultipleAssignment(targets), () -> process(select));
+                    enter(new MultipleAssignment(targets));
                 } else {
-                    stack.execute(new Children(view), () -> process(select));
+                    enter(new Children(view));
                 }
+                then(select);
+                exit();
             }
 
 
-            default -> processChildren(node).run();
+            default -> processChildren(node);
         }
     }
 
-    private void handleCall(QualifiedName calledName, Match arguments) {
-        context().returnBinding(context().resolve(calledName).orElseThrow());
+    private void handleCall(QualifiedName calledName, Nodes arguments) {
+        var called = context().resolve(calledName).orElseThrow();
+        if (called.getType() == BindingType.ROUTINE && !routines.isEmpty()) {
+            calls.add(new Call(routines.getLast(), called));
+        }
+        context().returnBinding(called);
 
-        // Arguments
+        // Arguments, each wrapper is created when the previous arguments have been processed
         AtomicInteger position = new AtomicInteger(0);
-        arguments.each().forEach(argument -> {
+        arguments.forEach(argument -> {
             if(argument.child("identifier").isEmpty()) {
-                stack.execute(new Wrapper(new Binding("["+position+"]", BindingType.ARGUMENT).position(position.getAndIncrement())), processChildren(argument));
+                then(() -> enter(new Wrapper(new Binding("["+position+"]", BindingType.ARGUMENT).position(position.getAndIncrement()))));
             } else {
-                stack.execute(new Wrapper(binding(identifier(argument), BindingType.ARGUMENT)), processChildren(argument));
+                then(() -> enter(new Wrapper(binding(identifier(argument), BindingType.ARGUMENT))));
             }
+            processChildren(argument);
+            exit();
         });
     }
 
-    private List<Binding> intoVariables(Match node) {
-        var vars = node.child("into_clause").find("id_expression").each();
+    private Optional<Binding> relation(String name) {
+        relations.add(name);
+        return schema.resolve(name);
+    }
+
+    /**
+     * Names looked up in the schema so far, including the ones not found.
+     */
+    public Set<String> getResolvedRelations() {
+        return relations;
+    }
+
+    private List<Binding> intoVariables(Node node) {
+        var vars = node.child("into_clause").find("id_expression");
         return vars.stream()
-                .map(this::text)
+                .map(Node::text)
                 .map(QualifiedName::of)
                 .map(t -> context().resolve(t).orElseThrow())
                 .toList();
     }
 
-    private Binding resolveNew(Match node, BindingType type) {
-        return context().resolve(QualifiedName.of(null, text(node), true)).or(() ->
+    private Binding resolveNew(Node node, BindingType type) {
+        return context().resolve(QualifiedName.of(null, node.text(), true)).or(() ->
                 Optional.of(context().declare(binding(node, type)))).orElseThrow();
     }
 
-    private Binding resolveExisting(Match node) {
-        return context().resolve(QualifiedName.of(null, text(node), true)).orElseThrow();
+    private Binding resolveExisting(Node node) {
+        return context().resolve(QualifiedName.of(null, node.text(), true)).orElseThrow();
     }
 
-    private Binding binding(Match node, BindingType type) {
-        return new Binding(text(node), type);
+    private Binding binding(Node node, BindingType type) {
+        return new Binding(node.text(), type);
     }
 
-    private String text(Match node) {
-        return node.text().trim().toLowerCase().replace("\"", "");
+    private Node identifier(Node node) {
+        return node.find("identifier").first().find("id_expression").last();
     }
 
-    private Match identifier(Match node) {
-        return node.find("identifier").first().find("id_expression").last();
+    private void processChildren(Node node) {
+        node.children().forEach(this::then);
+    }
+
+    private void processSiblings(Node node) {
+        node.siblings().forEach(this::then);
+    }
+
+    private void then(Node node) {
+        steps.add(node);
+    }
+
+    private void then(Runnable action) {
+        steps.add(action);
     }
 
-    private Runnable processChildren(Match node) {
-        return () -> node.children().each().forEach(this::process);
+    /**
+     * Pushes the frame, it stays on the stack until the matching {@link #exit()}.
+     */
+    private void enter(Frame frame) {
+        steps.add(frame);
     }
 
-    private Runnable processSiblings(Match node) {
-        return () -> node.siblings().each().forEach(this::process);
+    private void exit() {
+        steps.add(POP);
     }
 
     private void skip() {
@@ -0,0 +1,567 @@
+package ch.post.tools.seqeline.process;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.rio.RDFHandler;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.eclipse.rdf4j.model.util.Statements.statement;
+import static org.eclipse.rdf4j.model.util.Values.iri;
+
+/**
+ * Computes the column lineage shortcuts of simpllify.sparql from generated graphs.
+ * <p>
+ * A shortcut links a value (column, field, variable, alias or result) to a value with the same label that it flows
+ * into through routine arguments and parameters, records passed as arguments, or cursors. The shortcut targets are
+ * also linked to the values they output, directly or not.
+ * <p>
+ * Statements are collected as they are read, nodes being numbered to index the edges in adjacency arrays. The
+ * reflexive transitive closure of outputs is memoized per strongly connected component.
+ */
+public class Shortcuts extends AbstractRDFHandler {
+
+    private static final int VALUE = 1;
+    private static final int ROUTINE = 2;
+    private static final int PARAMETER = 4;
+    private static final int CURSOR = 8;
+
+    private final Map<IRI, Integer> typeMasks = new HashMap<>();
+    private final IRI output;
+    private final IRI member;
+    private final IRI reference;
+    private final IRI position;
+    private final Pattern labelFilter;
+
+    private final Map<Value, Integer> nodes = new HashMap<>();
+    private final List<Value> values = new ArrayList<>();
+    private final Map<Value, Integer> literals = new HashMap<>();
+    private final List<Value> literalValues = new ArrayList<>();
+    private final IntList types = new IntList();
+    private final Edges outputEdges = new Edges();
+    private final Edges memberEdges = new Edges();
+    private final Edges referenceEdges = new Edges();
+    private final Edges positionEdges = new Edges();
+    private final Edges labelEdges = new Edges();
+
+    /**
+     * @param labelFilter pattern searched in the labels of the shortcut sources, null to keep all of them
+     */
+    public Shortcuts(String domain, Pattern labelFilter) {
+        var line = TreeProcessor.schemaNamespace(domain);
+        for (var type : List.of("Column", "Field", "Variable", "Alias", "Result")) {
+            typeMasks.put(iri(line, type), VALUE);
+        }
+        typeMasks.put(iri(line, "Routine"), ROUTINE);
+        typeMasks.put(iri(line, "Parameter"), PARAMETER);
+        typeMasks.put(iri(line, "Cursor"), CURSOR);
+        output = iri(line, "output");
+        member = iri(line, "member");
+        reference = iri(line, "reference");
+        position = iri(line, "position");
+        this.labelFilter = labelFilter;
+    }
+
+    @Override
+    public void handleStatement(Statement statement) {
+        var predicate = statement.getPredicate();
+        var object = statement.getObject();
+        if (predicate.equals(RDF.TYPE)) {
+            var mask = typeMasks.get(object);
+            if (mask != null) {
+                var node = node(statement.getSubject());
+                types.set(node, types.get(node) | mask);
+            }
+        } else if (predicate.equals(output)) {
+            outputEdges.add(node(statement.getSubject()), node(object));
+        } else if (predicate.equals(member)) {
+            memberEdges.add(node(statement.getSubject()), node(object));
+        } else if (predicate.equals(reference)) {
+            referenceEdges.add(node(statement.getSubject()), node(object));
+        } else if (predicate.equals(position)) {
+            positionEdges.add(node(statement.getSubject()), literal(object));
+        } else if (predicate.equals(RDFS.LABEL)) {
+            labelEdges.add(node(statement.getSubject()), literal(object));
+        }
+    }
+
+    /**
+     * Computes the shortcuts and passes them to the handler as output statements in the given graph.
+     *
+     * @return the number of shortcuts
+     */
+    public int write(IRI graph, RDFHandler handler) {
+        var pairs = new Computation().run();
+        handler.startRDF();
+        for (var pair : pairs) {
+            handler.handleStatement(statement((Resource) values.get((int) (pair >>> 32)), output,
+                    values.get((int) pair), graph));
+        }
+        handler.endRDF();
+        return pairs.length;
+    }
+
+    private int node(Value value) {
+        return nodes.computeIfAbsent(value, v -> {
+            values.add(v);
+            types.set(values.size() - 1, 0);
+            return values.size() - 1;
+        });
+    }
+
+    private int literal(Value value) {
+        return literals.computeIfAbsent(value, v -> {
+            literalValues.add(v);
+            return literalValues.size() - 1;
+        });
+    }
+
+    private boolean hasType(int node, int mask) {
+        return (types.get(node) & mask) != 0;
+    }
+
+    private class Computation {
+        private final int size = values.size();
+        private final Adjacency out = new Adjacency(outputEdges, size, false);
+        private final Adjacency members = new Adjacency(memberEdges, size, false);
+        private final Adjacency containers = new Adjacency(memberEdges, size, true);
+        private final Adjacency references = new Adjacency(referenceEdges, size, false);
+        private final Adjacency referrers = new Adjacency(referenceEdges, size, true);
+        private final Adjacency positions = new Adjacency(positionEdges, size, false);
+        private final Adjacency labels = new Adjacency(labelEdges, size, false);
+
+        private final int[] component = new int[size];
+        private Adjacency componentMembers;
+        private int[][] closures;
+        private final int[][] parameters = new int[size][];
+
+        private final Marks targets = new Marks(size);
+        private final Marks reached = new Marks(size);
+        private final Marks scratch = new Marks(size);
+        private final Marks closure = new Marks(size);
+
+        long[] run() {
+            components();
+            var result = new LongList();
+            for (int source = 0; source < size; source++) {
+                if (hasType(source, VALUE) && labels.count(source) > 0 && matches(source)) {
+                    shortcuts(source, result);
+                }
+            }
+            var sorted = result.toArray();
+            Arrays.sort(sorted);
+            return Arrays.stream(sorted).distinct().toArray();
+        }
+
+        private boolean matches(int node) {
+            if (labelFilter == null) {
+                return true;
+            }
+            for (int i = labels.start(node); i < labels.end(node); i++) {
+                var label = literalValue(labels.target(i));
+                if (label != null && labelFilter.matcher(label).find()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void shortcuts(int source, LongList result) {
+            targets.clear();
+            var sourceClosure = closure(source);
+            for (var node : sourceClosure) {
+                // Arguments passed to parameters
+                for (var parameter : parameters(node)) {
+                    for (var target : closure(parameter)) {
+                        targets.add(target);
+                    }
+                }
+                // Records containing the value passed to parameters
+                for (int i = containers.start(node); i < containers.end(node); i++) {
+                    reached.clear();
+                    strictClosure(containers.target(i), reached);
+                    for (int j = 0; j < reached.size(); j++) {
+                        for (var parameter : parameters(reached.get(j))) {
+                            for (var record : closure(parameter)) {
+                                addMembers(record);
+                            }
+                        }
+                    }
+                }
+            }
+            // Cursors read into structures
+            reached.clear();
+            strictClosure(source, reached);
+            for (int i = 0; i < reached.size(); i++) {
+                var cursor = reached.get(i);
+                if (hasType(cursor, CURSOR)) {
+                    for (int j = referrers.start(cursor); j < referrers.end(cursor); j++) {
+                        scratch.clear();
+                        strictClosure(referrers.target(j), scratch);
+                        for (int k = 0; k < scratch.size(); k++) {
+                            addMembers(scratch.get(k));
+                        }
+                    }
+                }
+            }
+
+            for (int i = 0; i < targets.size(); i++) {
+                var target = targets.get(i);
+                if (shareLabel(source, target)) {
+                    result.add(pair(source, target));
+                    // Values output by the target
+                    scratch.clear();
+                    strictClosure(target, scratch);
+                    for (int j = 0; j < scratch.size(); j++) {
+                        if (hasType(scratch.get(j), VALUE)) {
+                            result.add(pair(target, scratch.get(j)));
+                        }
+                    }
+                }
+            }
+        }
+
+        private void addMembers(int node) {
+            for (int i = members.start(node); i < members.end(node); i++) {
+                targets.add(members.target(i));
+            }
+        }
+
+        private boolean shareLabel(int a, int b) {
+            for (int i = labels.start(a); i < labels.end(a); i++) {
+                for (int j = labels.start(b); j < labels.end(b); j++) {
+                    if (labels.target(i) == labels.target(j)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Parameters of the routines called with the given node as argument, at the same position.
+         */
+        private int[] parameters(int argument) {
+            if (parameters[argument] == null) {
+                var found = new IntList();
+                if (positions.count(argument) > 0) {
+                    for (int i = out.start(argument); i < out.end(argument); i++) {
+                        var call = out.target(i);
+                        for (int j = references.start(call); j < references.end(call); j++) {
+                            var routine = references.target(j);
+                            if (hasType(routine, ROUTINE)) {
+                                for (int k = members.start(routine); k < members.end(routine); k++) {
+                                    var parameter = members.target(k);
+                                    if (hasType(parameter, PARAMETER) && samePosition(argument, parameter) && !found.contains(parameter)) {
+                                        found.add(parameter);
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+                parameters[argument] = found.toArray();
+            }
+            return parameters[argument];
+        }
+
+        private boolean samePosition(int a, int b) {
+            for (int i = positions.start(a); i < positions.end(a); i++) {
+                for (int j = positions.start(b); j < positions.end(b); j++) {
+                    if (positions.target(i) == positions.target(j)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Nodes reachable through zero or more outputs.
+         */
+        private int[] closure(int node) {
+            var root = component[node];
+            if (closures[root] != null) {
+                return closures[root];
+            }
+            var stack = new IntList();
+            stack.add(root);
+            while (stack.size() > 0) {
+                var current = stack.get(stack.size() - 1);
+                if (closures[current] != null) {
+                    stack.removeLast();
+                    continue;
+                }
+                var ready = true;
+                for (int i = componentMembers.start(current); i < componentMembers.end(current); i++) {
+                    var m = componentMembers.target(i);
+                    for (int j = out.start(m); j < out.end(m); j++) {
+                        var next = component[out.target(j)];
+                        if (next != current && closures[next] == null) {
+                            stack.add(next);
+                            ready = false;
+                        }
+                    }
+                }
+                if (ready) {
+                    closure.clear();
+                    for (int i = componentMembers.start(current); i < componentMembers.end(current); i++) {
+                        var m = componentMembers.target(i);
+                        closure.add(m);
+                        for (int j = out.start(m); j < out.end(m); j++) {
+                            var next = component[out.target(j)];
+                            if (next != current) {
+                                for (var reachable : closures[next]) {
+                                    closure.add(reachable);
+                                }
+                            }
+                        }
+                    }
+                    closures[current] = closure.toArray();
+                    stack.removeLast();
+                }
+            }
+            return closures[root];
+        }
+
+        /**
+         * Adds the nodes reachable through one or more outputs.
+         */
+        private void strictClosure(int node, Marks into) {
+            for (int i = out.start(node); i < out.end(node); i++) {
+                for (var reachable : closure(out.target(i))) {
+                    into.add(reachable);
+                }
+            }
+        }
+
+        /**
+         * Tarjan's algorithm on the output edges, with an explicit stack.
+         */
+        private void components() {
+            var index = new int[size];
+            var low = new int[size];
+            var onStack = new boolean[size];
+            var edge = new int[size];
+            Arrays.fill(index, -1);
+            var stack = new IntList();
+            var calls = new IntList();
+            var componentEdges = new Edges();
+            int counter = 0;
+            int count = 0;
+            for (int start = 0; start < size; start++) {
+                if (index[start] >= 0) {
+                    continue;
+                }
+                calls.add(start);
+                while (calls.size() > 0) {
+                    var node = calls.get(calls.size() - 1);
+                    if (index[node] < 0) {
+                        index[node] = low[node] = counter++;
+                        edge[node] = out.start(node);
+                        stack.add(node);
+                        onStack[node] = true;
+                    }
+                    if (edge[node] < out.end(node)) {
+                        var next = out.target(edge[node]++);
+                        if (index[next] < 0) {
+                            calls.add(next);
+                        } else if (onStack[next]) {
+                            low[node] = Math.min(low[node], index[next]);
+                        }
+                        continue;
+                    }
+                    calls.removeLast();
+                    if (calls.size() > 0) {
+                        var parent = calls.get(calls.size() - 1);
+                        low[parent] = Math.min(low[parent], low[node]);
+                    }
+                    if (low[node] == index[node]) {
+                        int m;
+                        do {
+                            m = stack.removeLast();
+                            onStack[m] = false;
+                            component[m] = count;
+                            componentEdges.add(count, m);
+                        } while (m != node);
+                        count++;
+                    }
+                }
+            }
+            componentMembers = new Adjacency(componentEdges, count, false);
+            closures = new int[count][];
+        }
+    }
+
+    private String literalValue(int id) {
+        return literalValues.get(id) instanceof Literal literal ? literal.getLabel() : null;
+    }
+
+    private static long pair(int source, int target) {
+        return (long) source << 32 | target;
+    }
+
+    /**
+     * Compressed adjacency: the targets of node n are at [offsets[n], offsets[n + 1]).
+     */
+    private static class Adjacency {
+        private final int[] offsets;
+        private final int[] targets;
+
+        Adjacency(Edges edges, int size, boolean reverse) {
+            var from = reverse ? edges.to : edges.from;
+            var to = reverse ? edges.from : edges.to;
+            offsets = new int[size + 1];
+            for (int i = 0; i < from.size(); i++) {
+                offsets[from.get(i) + 1]++;
+            }
+            for (int i = 0; i < size; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            targets = new int[from.size()];
+            var next = Arrays.copyOf(offsets, size);
+            for (int i = 0; i < from.size(); i++) {
+                targets[next[from.get(i)]++] = to.get(i);
+            }
+        }
+
+        int start(int node) {
+            return offsets[node];
+        }
+
+        int end(int node) {
+            return offsets[node + 1];
+        }
+
+        int count(int node) {
+            return end(node) - start(node);
+        }
+
+        int target(int index) {
+            return targets[index];
+        }
+    }
+
+    private static class Edges {
+        private final IntList from = new IntList();
+        private final IntList to = new IntList();
+
+        void add(int source, int target) {
+            from.add(source);
+            to.add(target);
+        }
+    }
+
+    /**
+     * Set of nodes which can be cleared in constant time, iterated in insertion order.
+     */
+    private static class Marks {
+        private int[] stamps;
+        private int stamp = 1;
+        private final IntList elements = new IntList();
+
+        Marks(int size) {
+            stamps = new int[size];
+        }
+
+        void add(int node) {
+            if (stamps[node] != stamp) {
+                stamps[node] = stamp;
+                elements.add(node);
+            }
+        }
+
+        void clear() {
+            stamp++;
+            elements.clear();
+        }
+
+        int size() {
+            return elements.size();
+        }
+
+        int get(int index) {
+            return elements.get(index);
+        }
+
+        int[] toArray() {
+            return elements.toArray();
+        }
+    }
+
+    private static class IntList {
+        private int[] elements = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, size * 2);
+            }
+            elements[size++] = value;
+        }
+
+        void set(int index, int value) {
+            while (index >= elements.length) {
+                elements = Arrays.copyOf(elements, elements.length * 2);
+            }
+            elements[index] = value;
+            size = Math.max(size, index + 1);
+        }
+
+        int get(int index) {
+            return elements[index];
+        }
+
+        int removeLast() {
+            return elements[--size];
+        }
+
+        boolean contains(int value) {
+            for (int i = 0; i < size; i++) {
+                if (elements[i] == value) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(elements, size);
+        }
+    }
+
+    private static class LongList {
+        private long[] elements = new long[16];
+        private int size;
+
+        void add(long value) {
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, size * 2);
+            }
+            elements[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(elements, size);
+        }
+    }
+}
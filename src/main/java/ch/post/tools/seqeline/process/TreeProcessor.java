@@ -1,127 +1,309 @@
 package ch.post.tools.seqeline.process;
 
 import ch.post.tools.seqeline.binding.Binding;
+import ch.post.tools.seqeline.binding.BindingSequence;
+import ch.post.tools.seqeline.binding.BindingType;
 import ch.post.tools.seqeline.metadata.Schema;
 import ch.post.tools.seqeline.stack.Stack;
+import ch.post.tools.seqeline.tree.Node;
+import lombok.Getter;
 import lombok.SneakyThrows;
 import lombok.extern.java.Log;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Model;
-import org.eclipse.rdf4j.model.util.ModelBuilder;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.model.vocabulary.RDF;
 import org.eclipse.rdf4j.model.vocabulary.RDFS;
-import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
 import org.eclipse.rdf4j.rio.RDFWriter;
 import org.eclipse.rdf4j.rio.Rio;
-import org.joox.Match;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+import org.eclipse.rdf4j.rio.helpers.RDFHandlerWrapper;
 
 import java.io.*;
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.GZIPOutputStream;
 
 import static org.eclipse.rdf4j.model.util.Values.iri;
 import static org.eclipse.rdf4j.model.util.Values.literal;
-import static org.joox.JOOX.$;
-
 
 @Log
 public class TreeProcessor {
 
-    private Match root;
-    private ModelBuilder modelBuilder;
+    /**
+     * Version of the generated graphs, to be increased whenever a change alters the statements generated from a tree.
+     */
+    public static final int VERSION = 1;
+
+    private static final ValueFactory values = SimpleValueFactory.getInstance();
+
+    private Node root;
     private String line;
     private String line_data;
     private String localScope;
 
+    @Getter
     private String graphName;
 
+    /**
+     * Calls between global routines, available once the graph is processed.
+     */
+    @Getter
+    private CallGraph callGraph;
+
+    /**
+     * Relation names resolved in the schema, available once the graph is processed.
+     */
+    @Getter
+    private Set<String> resolvedRelations;
+
     private Schema schema;
 
+    private Stack stack;
+
+    private final IRI graph;
+    private final IRI member;
+    private final IRI output;
+    private final IRI effect;
+    private final IRI reference;
+    private final IRI position;
+    private final Map<BindingType, IRI> types = new EnumMap<>(BindingType.class);
+
     @SneakyThrows
-    public TreeProcessor(String domain, String scope, String name, Match root, Schema schema) {
+    public TreeProcessor(String domain, String scope, String name, Node root, Schema schema) {
         this.schema = schema;
         this.root = root;
 
-        domain = !domain.isBlank() ? "." + domain : "";
-        scope = !scope.isBlank() ? "/" + scope : "";
-
-        line = "https://schema"+domain+"/lineage/";
-        line_data = "https://data"+domain + scope + "/lineage/";
+        line = schemaNamespace(domain);
+        line_data = dataNamespace(domain, scope);
         localScope = name;
-        graphName = "https://graph" + domain + scope + "/lineage/" + localScope;
-        modelBuilder = new ModelBuilder()
-                .namedGraph(graphName)
-                .setNamespace("rdf", RDF.NAMESPACE)
-                .setNamespace("rdfs", RDFS.NAMESPACE)
-                .setNamespace("line", line)
-                .setNamespace("line_data", line_data);
+        graphName = graphName(domain, scope, name);
+
+        graph = iri(graphName);
+        member = iri(line, "member");
+        output = iri(line, "output");
+        effect = iri(line, "effect");
+        reference = iri(line, "reference");
+        position = iri(line, "position");
+        for (var type : BindingType.values()) {
+            types.put(type, iri(line, capitalize(type.toString())));
+        }
+    }
+
+    /**
+     * Namespace of the lineage vocabulary.
+     */
+    public static String schemaNamespace(String domain) {
+        return "https://schema" + (!domain.isBlank() ? "." + domain : "") + "/lineage/";
+    }
+
+    public static String dataNamespace(String domain, String scope) {
+        return "https://data" + (!domain.isBlank() ? "." + domain : "") + (!scope.isBlank() ? "/" + scope : "") + "/lineage/";
+    }
+
+    public static String graphName(String domain, String scope, String name) {
+        return "https://graph" + (!domain.isBlank() ? "." + domain : "") + (!scope.isBlank() ? "/" + scope : "") + "/lineage/" + name;
     }
 
     @SneakyThrows
     public String process(OutputStream out) {
+        return process(out, GraphFormat.TRIG, false);
+    }
 
-        var model = createModel();
-
-        RDFWriter writer = Rio.createWriter(RDFFormat.TRIG, out);
-        writer.startRDF();
-        model.getNamespaces().forEach(ns -> writer.handleNamespace(ns.getPrefix(), ns.getName()));
-        for (var statement : model) {
-            writer.handleStatement(statement);
+    /**
+     * Writes the graph statement by statement.
+     *
+     * @param copies other handlers receiving the statements while they are written
+     */
+    @SneakyThrows
+    public String process(OutputStream out, GraphFormat format, boolean gzip, RDFHandler... copies) {
+        var stack = stack();
+        var compressed = gzip ? new GZIPOutputStream(out, 1 << 16) : null;
+        var buffered = new BufferedOutputStream(gzip ? compressed : out, 1 << 16);
+        RDFWriter writer = Rio.createWriter(format.getRdfFormat(), buffered);
+        if (copies.length == 0) {
+            write(stack, writer);
+        } else {
+            var handlers = new RDFHandler[copies.length + 1];
+            handlers[0] = writer;
+            System.arraycopy(copies, 0, handlers, 1, copies.length);
+            write(stack, new RDFHandlerWrapper(handlers));
+        }
+        buffered.flush();
+        if (compressed != null) {
+            compressed.finish();
         }
-        writer.endRDF();
         return graphName;
     }
 
     public Model createModel() {
-        Stack stack = new Stack();
-        Binding.resetCounter();
-        new NodeProcessor(stack, schema).process(root);
+        var model = new LinkedHashModel();
+        write(stack(), new AbstractRDFHandler() {
+            @Override
+            public void handleNamespace(String prefix, String uri) {
+                model.setNamespace(prefix, uri);
+            }
+
+            @Override
+            public void handleStatement(Statement statement) {
+                model.add(statement);
+            }
+        });
+        return model;
+    }
 
-        Map<Binding, IRI> createdNodes = new HashMap<>();
+    /**
+     * Resolves the bindings of the tree, so that analysis errors surface before any output is opened.
+     * Otherwise done when the graph is first written.
+     */
+    public void analyze() {
+        stack();
+    }
+
+    private Stack stack() {
+        if (stack == null) {
+            stack = analyzeTree();
+        }
+        return stack;
+    }
+
+    private Stack analyzeTree() {
+        return new BindingSequence().run(() -> {
+            Stack stack = new Stack();
+            var processor = new NodeProcessor(stack, schema);
+            processor.process(root);
 
-        stack.root().getBindings().stream().forEach(primary -> {
-            var primaryName = primary.getName();
-            primary.setGlobalName(primaryName);
-            primary.children().forEach(secondary ->
-                    secondary.setGlobalName(primaryName + "." + secondary.getName()));
+            stack.root().getBindings().stream().forEach(primary -> {
+                var primaryName = primary.getName();
+                primary.setGlobalName(primaryName);
+                primary.children().forEach(secondary ->
+                        secondary.setGlobalName(primaryName + "." + secondary.getName()));
+            });
+            resolvedRelations = new TreeSet<>(processor.getResolvedRelations());
+            callGraph = new CallGraph();
+            processor.getCalls().stream()
+                    .filter(call -> call.caller().getGlobalName() != null && call.callee().getGlobalName() != null)
+                    .forEach(call -> callGraph.add(call.caller().getGlobalName(), call.callee().getGlobalName()));
+            return stack;
         });
+    }
 
-        stack.root().getBindings().stream().forEach(binding ->
-                createNode(modelBuilder, binding, createdNodes));
+    private void write(Stack stack, RDFHandler handler) {
+        handler.startRDF();
+        handler.handleNamespace("rdf", RDF.NAMESPACE);
+        handler.handleNamespace("rdfs", RDFS.NAMESPACE);
+        handler.handleNamespace("line", line);
+        handler.handleNamespace("line_data", line_data);
+        Set<Binding> created = new HashSet<>();
+        stack.root().getBindings().stream().forEach(binding -> createNode(handler, binding, created));
+        handler.endRDF();
+    }
+
+    /**
+     * Traversal state of a binding: the edge kind being iterated and the target whose node is being created.
+     */
+    private static class Visit {
+        final Binding binding;
+        final IRI iri;
+        int kind = 0;
+        Iterator<Binding> targets;
+        Binding pending;
+
+        Visit(Binding binding, IRI iri) {
+            this.binding = binding;
+            this.iri = iri;
+            this.targets = binding.children().iterator();
+        }
 
-        return modelBuilder.build();
+        Binding next() {
+            while (!targets.hasNext()) {
+                targets = switch (++kind) {
+                    case 1 -> binding.outputs().iterator();
+                    case 2 -> binding.effects().iterator();
+                    case 3 -> binding.references().iterator();
+                    default -> null;
+                };
+                if (targets == null) {
+                    return null;
+                }
+            }
+            return targets.next();
+        }
     }
 
-    private IRI createNode(ModelBuilder modelBuilder, Binding binding, Map<Binding, IRI> createdNodes) {
-        var existing = createdNodes.get(binding);
-        if(existing != null) {
-            return existing;
+    /**
+     * Emits the node of a binding and of all bindings reachable from it, depth first. An edge is emitted after the
+     * node of its target.
+     */
+    private void createNode(RDFHandler handler, Binding binding, Set<Binding> created) {
+        if (!created.add(binding)) {
+            return;
         }
-        var name = Optional.ofNullable(binding.getGlobalName())
-                .orElse(localScope+":" +binding.getType().toString().toLowerCase()+":"+ binding.getId());
-        var nodeIri = iri(line_data, name);
-        createdNodes.put(binding, nodeIri);
+        Deque<Visit> visits = new ArrayDeque<>();
+        visits.push(new Visit(binding, describe(handler, binding)));
+        while (!visits.isEmpty()) {
+            var visit = visits.peek();
+            if (visit.pending != null) {
+                emit(handler, visit.iri, edge(visit.kind), nodeIri(visit.pending));
+                visit.pending = null;
+            }
+            var target = visit.next();
+            if (target == null) {
+                visits.pop();
+            } else if (!created.add(target)) {
+                emit(handler, visit.iri, edge(visit.kind), nodeIri(target));
+            } else {
+                visit.pending = target;
+                visits.push(new Visit(target, describe(handler, target)));
+            }
+        }
+    }
 
-        modelBuilder.add(nodeIri, RDF.TYPE, iri(line, capitalize(binding.getType().toString())));
+    private IRI describe(RDFHandler handler, Binding binding) {
+        var nodeIri = nodeIri(binding);
+        emit(handler, nodeIri, RDF.TYPE, types.get(binding.getType()));
         binding.additionalTypes().forEach(type ->
-                modelBuilder.add(nodeIri, RDF.TYPE, capitalize(type)));
-        modelBuilder.add(nodeIri, RDFS.LABEL, literal(binding.getName().toLowerCase()));
+                emit(handler, nodeIri, RDF.TYPE, literal(capitalize(type))));
+        emit(handler, nodeIri, RDFS.LABEL, literal(binding.getName().toLowerCase()));
         Optional.ofNullable(binding.getComment()).ifPresent(comment ->
-                modelBuilder.add(nodeIri, RDFS.COMMENT, literal(comment)));
-        Optional.ofNullable(binding.getPosition()).ifPresent(position ->
-                modelBuilder.add(nodeIri, iri(line, "position"), literal(position)));
-        binding.children().forEach(child ->
-                modelBuilder.add(nodeIri, iri(line, "member"), createNode(modelBuilder, child, createdNodes)));
-        binding.outputs().forEach(output ->
-                modelBuilder.add(nodeIri, iri(line, "output"), createNode(modelBuilder, output, createdNodes)));
-        binding.effects().forEach(effect ->
-                modelBuilder.add(nodeIri, iri(line, "effect"), createNode(modelBuilder, effect, createdNodes)));
-        binding.references().forEach(reference ->
-                modelBuilder.add(nodeIri, iri(line, "reference"), createNode(modelBuilder, reference, createdNodes)));
+                emit(handler, nodeIri, RDFS.COMMENT, literal(comment)));
+        Optional.ofNullable(binding.getPosition()).ifPresent(value ->
+                emit(handler, nodeIri, position, literal(value)));
         return nodeIri;
     }
 
+    private IRI nodeIri(Binding binding) {
+        var name = Optional.ofNullable(binding.getGlobalName())
+                .orElse(localScope+":" +binding.getType().toString().toLowerCase()+":"+ binding.getId());
+        return iri(line_data, name);
+    }
+
+    private IRI edge(int kind) {
+        return switch (kind) {
+            case 0 -> member;
+            case 1 -> output;
+            case 2 -> effect;
+            default -> reference;
+        };
+    }
+
+    private void emit(RDFHandler handler, Resource subject, IRI predicate, Value object) {
+        handler.handleStatement(values.createStatement(subject, predicate, object, graph));
+    }
+
     private String capitalize(String text) {
         return text.substring(0, 1).toUpperCase() + text.substring(1).toLowerCase();
     }
@@ -10,9 +10,15 @@ public abstract class Frame {
     @Setter
     protected Frame parent;
 
+    /**
+     * Distance to the root, set when pushed on the stack.
+     */
+    int depth;
+
+    SymbolTable symbols;
+
     public Optional<Binding> resolve(QualifiedName qualifiedName) {
-        var result = resolveLocal(qualifiedName);
-        return result.or(() -> Optional.ofNullable(parent).flatMap(p -> p.resolve(qualifiedName)));
+        return symbols.resolve(qualifiedName, this);
     }
 
 
@@ -20,7 +26,10 @@ public abstract class Frame {
         Optional.ofNullable(parent).ifPresent(p -> p.returnBinding(binding));
     }
 
-    protected Optional<Binding> resolveLocal(QualifiedName qualifiedName) {
+    /**
+     * Applies the rules of this frame to a binding it declares under the root name of the qualified name.
+     */
+    protected Optional<Binding> resolveLocal(QualifiedName qualifiedName, Binding declared) {
         return Optional.empty();
     }
 
@@ -20,10 +20,10 @@ public class LexicalScope extends Frame {
     private Binding owner;
 
     @Override
-    protected Optional<Binding> resolveLocal(QualifiedName qualifiedName) {
-        var localBinding = declarations.lookup(qualifiedName);;
+    protected Optional<Binding> resolveLocal(QualifiedName qualifiedName, Binding declared) {
+        var localBinding = declared.match(qualifiedName);
         if(qualifiedName.getType() == BindingType.RELATION || qualifiedName.getType() == BindingType.PACKAGE) {
-            localBinding.ifPresent(declarations::remove);
+            localBinding.flatMap(declarations::remove).ifPresent(removed -> symbols.remove(this, removed.getName()));
             return Optional.empty();
         } else {
             return localBinding;
@@ -57,6 +57,7 @@ public class LexicalScope extends Frame {
             result = super.declare(binding);
         } else {
             result = declarations.add(binding);
+            symbols.declare(this, result);
         }
         if(owner != null &&
                 (binding.getType() == BindingType.ROUTINE ||
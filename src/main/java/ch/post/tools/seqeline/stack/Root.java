@@ -12,8 +12,14 @@ public class Root extends Frame {
     @Getter
     private final BindingBag bindings = new BindingBag();
 
-    @Override
-    protected Optional<Binding> resolveLocal(QualifiedName qualifiedName) {
+    public Root() {
+        symbols = new SymbolTable(this);
+    }
+
+    /**
+     * Creates the bindings of names not declared in any frame.
+     */
+    Optional<Binding> resolveLocal(QualifiedName qualifiedName) {
         var type = Optional.ofNullable(qualifiedName.getType()).orElse(BindingType.UNDEFINED);
         if(!qualifiedName.isDeclared()) {
             var binding = new Binding(qualifiedName.getName(), type);
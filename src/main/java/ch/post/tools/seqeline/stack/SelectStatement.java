@@ -32,9 +32,9 @@ public class SelectStatement extends Frame {
     }
 
     @Override
-    protected Optional<Binding> resolveLocal(QualifiedName qualifiedName) {
+    protected Optional<Binding> resolveLocal(QualifiedName qualifiedName, Binding declared) {
         if(!qualifiedName.isDeclared()) {
-            return selection.lookup(qualifiedName);
+            return declared.match(qualifiedName);
         } else {
             return Optional.empty();
         }
@@ -42,7 +42,9 @@ public class SelectStatement extends Frame {
 
     @Override
     public Binding declare(Binding binding) {
-        return selection.add(binding);
+        var result = selection.add(binding);
+        symbols.declare(this, result);
+        return result;
     }
 
     @Override
@@ -5,12 +5,17 @@ public class Stack {
     private Frame top = root;
 
     public void execute(Frame frame, Runnable runnable) {
+        push(frame);
+        runnable.run();
+        pop();
+    }
+
+    public void push(Frame frame) {
         frame.parent = top;
+        frame.depth = top.depth + 1;
+        frame.symbols = top.symbols;
         top = frame;
         frame.push();
-        runnable.run();
-        frame.pop();
-        top = frame.parent;
     }
 
     public Frame top() {
@@ -23,6 +28,7 @@ public class Stack {
 
     public void pop() {
         top.pop();
+        top.symbols.exit(top);
         top = top.parent;
     }
 }
@@ -0,0 +1,91 @@
+package ch.post.tools.seqeline.stack;
+
+import ch.post.tools.seqeline.binding.Binding;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Index of the bindings declared in the frames of a stack. For each name, keeps the visible declarations ordered by
+ * frame depth, so that a lookup only visits the frames actually declaring the name.
+ */
+class SymbolTable {
+
+    private final Root root;
+
+    private final Map<String, List<Symbol>> symbols = new HashMap<>();
+
+    private final Map<Frame, List<String>> declaredNames = new IdentityHashMap<>();
+
+    private record Symbol(Frame frame, Binding binding) {
+    }
+
+    SymbolTable(Root root) {
+        this.root = root;
+    }
+
+    /**
+     * Resolves a name as seen from the given frame: declarations of deeper frames win, the root creates the
+     * bindings not declared anywhere.
+     */
+    Optional<Binding> resolve(QualifiedName qualifiedName, Frame from) {
+        var declared = symbols.get(rootName(qualifiedName));
+        if (declared != null) {
+            // Iterating backwards tolerates the removal of the visited symbol
+            for (int i = declared.size() - 1; i >= 0; i--) {
+                var symbol = declared.get(i);
+                if (symbol.frame().depth <= from.depth) {
+                    var result = symbol.frame().resolveLocal(qualifiedName, symbol.binding());
+                    if (result.isPresent()) {
+                        return result;
+                    }
+                }
+            }
+        }
+        return root.resolveLocal(qualifiedName);
+    }
+
+    /**
+     * Records a binding stored in a frame. Like in a binding bag, the first binding of a name in a frame is kept.
+     */
+    void declare(Frame frame, Binding binding) {
+        var declared = symbols.computeIfAbsent(binding.getName(), name -> new ArrayList<>(2));
+        int position = declared.size();
+        while (position > 0 && declared.get(position - 1).frame().depth >= frame.depth) {
+            if (declared.get(position - 1).frame() == frame) {
+                return;
+            }
+            position--;
+        }
+        declared.add(position, new Symbol(frame, binding));
+        declaredNames.computeIfAbsent(frame, f -> new ArrayList<>()).add(binding.getName());
+    }
+
+    void remove(Frame frame, String name) {
+        var declared = symbols.get(name);
+        if (declared != null) {
+            declared.removeIf(symbol -> symbol.frame() == frame);
+            if (declared.isEmpty()) {
+                symbols.remove(name);
+            }
+        }
+    }
+
+    /**
+     * Drops the declarations of a frame leaving the stack.
+     */
+    void exit(Frame frame) {
+        var names = declaredNames.remove(frame);
+        if (names != null) {
+            names.forEach(name -> remove(frame, name));
+        }
+    }
+
+    private static String rootName(QualifiedName qualifiedName) {
+        return qualifiedName.getPrefix() != null ? qualifiedName.getPrefix() : qualifiedName.getName();
+    }
+}
@@ -0,0 +1,207 @@
+package ch.post.tools.seqeline.store;
+
+import ch.post.tools.seqeline.process.GraphFormat;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.rdf4j.common.transaction.IsolationLevels;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.query.BooleanQuery;
+import org.eclipse.rdf4j.query.GraphQuery;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.query.resultio.text.csv.SPARQLResultsCSVWriter;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.repository.util.RDFInserter;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.RDFHandlerWrapper;
+import org.eclipse.rdf4j.sail.Sail;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.eclipse.rdf4j.sail.nativerdf.NativeStore;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.eclipse.rdf4j.model.util.Values.iri;
+
+/**
+ * Embedded triple store holding the generated graphs, to run SPARQL analyses without publishing them.
+ * <p>
+ * The store remembers the hash of each loaded graph file, so that unchanged graphs are not loaded again.
+ */
+@Slf4j
+public class LocalStore implements AutoCloseable {
+
+    /**
+     * Queries shipped as resources, referenced by name.
+     */
+    public static final List<String> BUNDLED_QUERIES = List.of("simpllify", "code-depenencies");
+
+    private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    public record GraphFile(File file, String hash) {
+    }
+
+    private record Loaded(String hash, List<String> graphs) {
+    }
+
+    private final SailRepository repository;
+
+    private final File index;
+
+    private final Map<String, Loaded> loaded = new TreeMap<>();
+
+    /**
+     * @param memory keep the statements in memory, persisted to the directory on close, instead of a native store
+     */
+    @SneakyThrows
+    public LocalStore(File dir, boolean memory) {
+        var dataDir = new File(dir, memory ? "memory" : "native");
+        dataDir.mkdirs();
+        Sail sail;
+        if (memory) {
+            var store = new MemoryStore(dataDir);
+            store.setPersist(true);
+            sail = store;
+        } else {
+            sail = new NativeStore(dataDir);
+        }
+        repository = new SailRepository(sail);
+        repository.init();
+        index = new File(dataDir, "loaded.json");
+        if (index.exists()) {
+            try {
+                loaded.putAll(mapper.readValue(index, new TypeReference<Map<String, Loaded>>() {
+                }));
+            } catch (IOException e) {
+                log.warn("Ignoring unreadable store index " + index);
+            }
+        }
+    }
+
+    /**
+     * Loads the graph files whose hash changed since they were last loaded, replacing their previous graphs.
+     * The graphs of files loaded before but no longer given, e.g. of deleted sources, are removed.
+     *
+     * @param files graph files by relative path
+     * @return the number of files loaded
+     */
+    public int update(Map<String, GraphFile> files) throws IOException {
+        int count = 0;
+        try (var connection = repository.getConnection()) {
+            connection.begin(IsolationLevels.NONE);
+            var stale = new ArrayList<>(loaded.keySet());
+            stale.removeAll(files.keySet());
+            if (!stale.isEmpty()) {
+                // Graphs may have moved to another file, as when the format changes
+                var kept = new HashSet<String>();
+                loaded.forEach((path, previous) -> {
+                    if (files.containsKey(path)) {
+                        kept.addAll(previous.graphs());
+                    }
+                });
+                for (var path : stale) {
+                    loaded.remove(path).graphs().stream()
+                            .filter(graph -> !kept.contains(graph))
+                            .forEach(graph -> connection.clear(iri(graph)));
+                }
+                log.info("Removed the graphs of " + stale.size() + " files no longer generated.");
+            }
+            for (var file : files.entrySet()) {
+                var previous = loaded.get(file.getKey());
+                if (previous != null && previous.hash().equals(file.getValue().hash())) {
+                    continue;
+                }
+                if (previous != null) {
+                    previous.graphs().forEach(graph -> connection.clear(iri(graph)));
+                }
+                var format = GraphFormat.of(file.getKey())
+                        .orElseThrow(() -> new IOException("Unknown graph format: " + file.getKey()));
+                var graphs = new LinkedHashSet<String>();
+                var parser = Rio.createParser(format.getRdfFormat());
+                parser.setRDFHandler(new RDFHandlerWrapper(new RDFInserter(connection)) {
+                    @Override
+                    public void handleStatement(Statement statement) {
+                        if (statement.getContext() != null) {
+                            graphs.add(statement.getContext().stringValue());
+                        }
+                        super.handleStatement(statement);
+                    }
+                });
+                try (var in = GraphFormat.read(file.getValue().file())) {
+                    parser.parse(in, "");
+                }
+                loaded.put(file.getKey(), new Loaded(file.getValue().hash(), List.copyOf(graphs)));
+                count++;
+            }
+            connection.commit();
+        }
+        saveIndex();
+        return count;
+    }
+
+    /**
+     * Runs a query and writes its results in the given directory: graphs as Turtle, bindings as CSV and booleans as
+     * text.
+     *
+     * @param query name of a bundled query or path to a SPARQL file
+     * @return the result file
+     */
+    public File query(String query, File resultDir) throws IOException {
+        var file = new File(query);
+        var name = BUNDLED_QUERIES.contains(query) ? query : file.getName().replaceAll("\\.[^.]+$", "");
+        String sparql;
+        if (BUNDLED_QUERIES.contains(query)) {
+            try (var in = LocalStore.class.getResourceAsStream("/" + query + ".sparql")) {
+                sparql = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        } else {
+            sparql = Files.readString(file.toPath());
+        }
+
+        resultDir.mkdirs();
+        try (var connection = repository.getConnection()) {
+            var prepared = connection.prepareQuery(sparql);
+            File result;
+            if (prepared instanceof GraphQuery graphQuery) {
+                result = new File(resultDir, name + ".ttl");
+                try (var out = new BufferedOutputStream(new FileOutputStream(result))) {
+                    graphQuery.evaluate(Rio.createWriter(RDFFormat.TURTLE, out));
+                }
+            } else if (prepared instanceof TupleQuery tupleQuery) {
+                result = new File(resultDir, name + ".csv");
+                try (var out = new BufferedOutputStream(new FileOutputStream(result))) {
+                    tupleQuery.evaluate(new SPARQLResultsCSVWriter(out));
+                }
+            } else {
+                result = new File(resultDir, name + ".txt");
+                Files.writeString(result.toPath(), ((BooleanQuery) prepared).evaluate() + "\n");
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public void close() {
+        repository.shutDown();
+    }
+
+    private void saveIndex() throws IOException {
+        var temp = new File(index.getParentFile(), index.getName() + ".tmp");
+        mapper.writeValue(temp, loaded);
+        Files.move(temp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,164 @@
+package ch.post.tools.seqeline.tree;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary serialization of trees, used for the tree cache.
+ * <p>
+ * Layout: magic, version, string table (tags and token texts, each stored once), then the nodes in document order
+ * as (tag, text, child count) triples. All integers are varints.
+ */
+public final class BinaryTree {
+
+    private static final int MAGIC = 0x53514c54; // SQLT
+
+    public static final int VERSION = 1;
+
+    private BinaryTree() {
+    }
+
+    public static void write(Node root, OutputStream out) throws IOException {
+        var strings = new HashMap<String, Integer>();
+        var table = new ArrayList<String>();
+        var nodes = new ArrayList<Node>();
+        if (root.isNotEmpty()) {
+            collect(root, strings, table, nodes);
+        }
+
+        var data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        writeVarint(data, VERSION);
+        writeVarint(data, table.size());
+        for (var string : table) {
+            var bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarint(data, bytes.length);
+            data.write(bytes);
+        }
+        writeVarint(data, nodes.size());
+        for (var node : nodes) {
+            writeVarint(data, strings.get(node.tag()));
+            writeVarint(data, node.value() == null ? 0 : strings.get(node.value()) + 1);
+            writeVarint(data, node.children().size());
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a tree from a memory-mapped file.
+     *
+     * @throws IOException if the file is not a complete tree of the current version
+     */
+    public static Node read(File file) throws IOException {
+        try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                return read(buffer);
+            } catch (RuntimeException e) {
+                throw new IOException("Corrupted tree file " + file, e);
+            }
+        }
+    }
+
+    static Node read(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 4 || buffer.getInt() != MAGIC || readVarint(buffer) != VERSION) {
+            throw new IOException("Unsupported tree format");
+        }
+        // Each string takes at least its length byte, each node three bytes
+        var table = new String[readLength(buffer, 1)];
+        for (int i = 0; i < table.length; i++) {
+            var bytes = new byte[readLength(buffer, 1)];
+            buffer.get(bytes);
+            table[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        var builder = new TreeBuilder();
+        var remaining = new ArrayDeque<int[]>();
+        var count = readLength(buffer, 3);
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && remaining.isEmpty()) {
+                throw new IOException("Nodes after the root");
+            }
+            builder.open(table[readVarint(buffer)]);
+            var value = readVarint(buffer);
+            if (value > 0) {
+                builder.token(table[value - 1]);
+            }
+            remaining.push(new int[]{readVarint(buffer)});
+            // Close all nodes whose children are complete
+            while (!remaining.isEmpty() && remaining.peek()[0] == 0) {
+                remaining.pop();
+                builder.close();
+                if (!remaining.isEmpty()) {
+                    remaining.peek()[0]--;
+                }
+            }
+        }
+        if (!remaining.isEmpty() || buffer.hasRemaining()) {
+            throw new IOException("Incomplete node section");
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reads a count of items, each taking at least the given number of bytes in the rest of the buffer.
+     */
+    private static int readLength(ByteBuffer buffer, int itemSize) throws IOException {
+        var length = readVarint(buffer);
+        if (length < 0 || length > buffer.remaining() / itemSize) {
+            throw new IOException("Invalid length " + length);
+        }
+        return length;
+    }
+
+    private static void collect(Node node, Map<String, Integer> strings, List<String> table, List<Node> nodes) {
+        nodes.add(node);
+        intern(node.tag(), strings, table);
+        if (node.value() != null) {
+            intern(node.value(), strings, table);
+        }
+        for (var child : node.children()) {
+            collect(child, strings, table, nodes);
+        }
+    }
+
+    private static void intern(String string, Map<String, Integer> strings, List<String> table) {
+        strings.computeIfAbsent(string, s -> {
+            table.add(s);
+            return table.size() - 1;
+        });
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(ByteBuffer buffer) throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            var b = buffer.get();
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Invalid varint");
+    }
+}
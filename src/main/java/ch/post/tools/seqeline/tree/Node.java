@@ -0,0 +1,232 @@
+package ch.post.tools.seqeline.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Element of the pruned syntax tree. Terminal rules carry their token text, already normalized for identifier lookups.
+ * Lookups on missing nodes return {@link #EMPTY}, so that selections can be chained without checks.
+ */
+public final class Node {
+
+    // Initialized before EMPTY, which takes it as children
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    public static final Node EMPTY = new Node(Tags.NONE);
+
+    // Wider nodes get a tag index for child lookups
+    private static final int INDEX_THRESHOLD = 8;
+
+    private final int tag;
+
+    private String value;
+
+    private String text;
+
+    private Node parent;
+
+    private int index;
+
+    private Node[] children = NO_CHILDREN;
+
+    private Map<Integer, List<Node>> childIndex;
+
+    Node(int tag) {
+        this.tag = tag;
+    }
+
+    void addToken(String token) {
+        value = value == null ? token : value + " " + token;
+    }
+
+    void seal(List<Node> nodes, UnaryOperator<String> interner) {
+        if (!nodes.isEmpty()) {
+            children = nodes.toArray(NO_CHILDREN);
+            for (int i = 0; i < children.length; i++) {
+                children[i].parent = this;
+                children[i].index = i;
+            }
+        }
+        if (value != null && children.length == 0) {
+            text = interner.apply(normalize(value));
+        }
+    }
+
+    public String tag() {
+        return Tags.name(tag);
+    }
+
+    int tagId() {
+        return tag;
+    }
+
+    /**
+     * Raw token text of this node, as found in the source.
+     */
+    String value() {
+        return value;
+    }
+
+    public boolean is(String tag) {
+        return !isEmpty() && this.tag == Tags.id(tag);
+    }
+
+    public boolean isEmpty() {
+        return this == EMPTY;
+    }
+
+    public boolean isNotEmpty() {
+        return this != EMPTY;
+    }
+
+    public Node parent() {
+        return parent != null ? parent : EMPTY;
+    }
+
+    public Node child(int index) {
+        return index < children.length ? children[index] : EMPTY;
+    }
+
+    /**
+     * First child having one of the given tags.
+     */
+    public Node child(String... tags) {
+        var result = EMPTY;
+        for (var tag : tags) {
+            var candidate = children(tag).first();
+            if (candidate.isNotEmpty() && (result.isEmpty() || candidate.index < result.index)) {
+                result = candidate;
+            }
+        }
+        return result;
+    }
+
+    public Nodes children() {
+        return children.length == 0 ? Nodes.EMPTY : new Nodes(Arrays.asList(children));
+    }
+
+    public Nodes children(String tag) {
+        var id = Tags.id(tag);
+        if (children.length > INDEX_THRESHOLD) {
+            if (childIndex == null) {
+                childIndex = new HashMap<>();
+                for (var child : children) {
+                    childIndex.computeIfAbsent(child.tag, t -> new ArrayList<>(2)).add(child);
+                }
+            }
+            return new Nodes(childIndex.getOrDefault(id, List.of()));
+        }
+        List<Node> result = null;
+        for (var child : children) {
+            if (child.tag == id) {
+                if (result == null) {
+                    result = new ArrayList<>(2);
+                }
+                result.add(child);
+            }
+        }
+        return result == null ? Nodes.EMPTY : new Nodes(result);
+    }
+
+    /**
+     * Descendants having the given tag, in document order.
+     */
+    public Nodes find(String tag) {
+        var result = new ArrayList<Node>();
+        collect(Tags.id(tag), result);
+        return new Nodes(result);
+    }
+
+    private void collect(int id, List<Node> result) {
+        for (var child : children) {
+            if (child.tag == id) {
+                result.add(child);
+            }
+            child.collect(id, result);
+        }
+    }
+
+    public Node next() {
+        return parent != null ? parent.child(index + 1) : EMPTY;
+    }
+
+    public Node prev() {
+        return parent != null && index > 0 ? parent.children[index - 1] : EMPTY;
+    }
+
+    /**
+     * Next sibling, if it has the given tag.
+     */
+    public Node next(String tag) {
+        var next = next();
+        return next.is(tag) ? next : EMPTY;
+    }
+
+    /**
+     * Previous sibling, if it has the given tag.
+     */
+    public Node prev(String tag) {
+        var prev = prev();
+        return prev.is(tag) ? prev : EMPTY;
+    }
+
+    public Nodes nextAll() {
+        if (parent == null) {
+            return Nodes.EMPTY;
+        }
+        return new Nodes(Arrays.asList(parent.children).subList(index + 1, parent.children.length));
+    }
+
+    public Nodes nextAll(String tag) {
+        var id = Tags.id(tag);
+        return new Nodes(nextAll().stream().filter(node -> node.tag == id).toList());
+    }
+
+    public Nodes siblings() {
+        if (parent == null) {
+            return Nodes.EMPTY;
+        }
+        var result = new ArrayList<Node>(parent.children.length - 1);
+        for (var sibling : parent.children) {
+            if (sibling != this) {
+                result.add(sibling);
+            }
+        }
+        return new Nodes(result);
+    }
+
+    /**
+     * Normalized text of this node, i.e. of the tokens below it.
+     */
+    public String text() {
+        if (text == null) {
+            var tokens = new ArrayList<String>();
+            collectText(tokens);
+            text = String.join(" ", tokens);
+        }
+        return text;
+    }
+
+    private void collectText(List<String> tokens) {
+        if (text != null) {
+            if (!text.isEmpty()) {
+                tokens.add(text);
+            }
+            return;
+        }
+        if (value != null) {
+            tokens.add(normalize(value));
+        }
+        for (var child : children) {
+            child.collectText(tokens);
+        }
+    }
+
+    private static String normalize(String value) {
+        return value.trim().toLowerCase().replace("\"", "");
+    }
+}
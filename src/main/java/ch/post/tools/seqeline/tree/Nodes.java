@@ -0,0 +1,75 @@
+package ch.post.tools.seqeline.tree;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Ordered selection of nodes, as returned by child and descendant lookups.
+ */
+public final class Nodes implements Iterable<Node> {
+
+    static final Nodes EMPTY = new Nodes(List.of());
+
+    private final List<Node> nodes;
+
+    Nodes(List<Node> nodes) {
+        this.nodes = nodes;
+    }
+
+    public Node first() {
+        return nodes.isEmpty() ? Node.EMPTY : nodes.get(0);
+    }
+
+    public Node last() {
+        return nodes.isEmpty() ? Node.EMPTY : nodes.get(nodes.size() - 1);
+    }
+
+    public Node get(int index) {
+        return index < nodes.size() ? nodes.get(index) : Node.EMPTY;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    public boolean isNotEmpty() {
+        return !nodes.isEmpty();
+    }
+
+    public Nodes children() {
+        return collect(Node::children);
+    }
+
+    public Nodes children(String tag) {
+        return collect(node -> node.children(tag));
+    }
+
+    public Nodes find(String tag) {
+        return collect(node -> node.find(tag));
+    }
+
+    public Stream<Node> stream() {
+        return nodes.stream();
+    }
+
+    @Override
+    public Iterator<Node> iterator() {
+        return nodes.iterator();
+    }
+
+    private Nodes collect(Function<Node, Nodes> selector) {
+        if (nodes.size() == 1) {
+            return selector.apply(nodes.get(0));
+        }
+        var result = new ArrayList<Node>();
+        nodes.forEach(node -> selector.apply(node).forEach(result::add));
+        return new Nodes(result);
+    }
+}
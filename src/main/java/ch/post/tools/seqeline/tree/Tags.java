@@ -0,0 +1,41 @@
+package ch.post.tools.seqeline.tree;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interned tag names. Tags are grammar rule names, so the registry stays small and is shared by all trees.
+ */
+public final class Tags {
+
+    static final int NONE = -1;
+
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    private static volatile String[] names = new String[0];
+
+    private Tags() {
+    }
+
+    public static int id(String name) {
+        var id = ids.get(name);
+        return id != null ? id : register(name);
+    }
+
+    public static String name(int id) {
+        return id == NONE ? null : names[id];
+    }
+
+    private static synchronized int register(String name) {
+        var id = ids.get(name);
+        if (id == null) {
+            id = names.length;
+            var extended = Arrays.copyOf(names, id + 1);
+            extended[id] = name;
+            names = extended;
+            ids.put(name, id);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,79 @@
+package ch.post.tools.seqeline.tree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a tree from open/close events, as emitted by the parse listener or read from a serialized tree.
+ */
+public class TreeBuilder {
+
+    private final Deque<Node> open = new ArrayDeque<>();
+
+    private final Deque<List<Node>> pending = new ArrayDeque<>();
+
+    private final Map<String, String> texts = new HashMap<>();
+
+    private Node root = Node.EMPTY;
+
+    public void open(String tag) {
+        open.push(new Node(Tags.id(tag)));
+        pending.push(new ArrayList<>());
+    }
+
+    public void token(String token) {
+        if (!open.isEmpty()) {
+            open.peek().addToken(token);
+        }
+    }
+
+    public void close() {
+        var node = open.pop();
+        node.seal(pending.pop(), text -> texts.computeIfAbsent(text, t -> t));
+        if (open.isEmpty()) {
+            root = node;
+        } else {
+            pending.peek().add(node);
+        }
+    }
+
+    /**
+     * Position of the next child of the open node, to be passed to {@link #wrap}.
+     */
+    public int mark() {
+        return pending.isEmpty() ? 0 : pending.peek().size();
+    }
+
+    /**
+     * Opens a node adopting the children added to the open node since the mark.
+     * Used for left-recursive rules, whose enclosing context is entered only after its first operand is complete.
+     */
+    public void wrap(String tag, int mark) {
+        var siblings = pending.peek();
+        open(tag);
+        if (siblings != null) {
+            var adopted = siblings.subList(mark, siblings.size());
+            pending.peek().addAll(adopted);
+            adopted.clear();
+        }
+    }
+
+    public Node build() {
+        return root;
+    }
+
+    /**
+     * Joins the children of several roots under a single root having the tag of the first one.
+     */
+    public static Node join(List<Node> roots) {
+        var root = new Node(roots.get(0).tagId());
+        var children = new ArrayList<Node>();
+        roots.forEach(part -> part.children().forEach(children::add));
+        root.seal(children, text -> text);
+        return root;
+    }
+}
@@ -0,0 +1,81 @@
+package ch.post.tools.seqeline.tree;
+
+import lombok.SneakyThrows;
+import org.apache.commons.text.StringEscapeUtils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.io.Writer;
+
+/**
+ * Indented XML serialization of trees, for debugging and caching.
+ */
+public final class XmlTree {
+
+    private XmlTree() {
+    }
+
+    @SneakyThrows
+    public static void write(Node root, Writer out) {
+        var writer = new BufferedWriter(out);
+        writer.newLine();
+        if (root.isNotEmpty()) {
+            write(root, "", writer);
+        }
+        writer.flush();
+    }
+
+    @SneakyThrows
+    private static void write(Node node, String indent, BufferedWriter writer) {
+        writer.write(indent + "<" + node.tag() + ">");
+        writer.newLine();
+        var childIndent = indent + "  ";
+        if (node.value() != null) {
+            writer.write(childIndent + StringEscapeUtils.escapeXml11(node.value()));
+            writer.newLine();
+        }
+        for (var child : node.children()) {
+            write(child, childIndent, writer);
+        }
+        writer.write(indent + "</" + node.tag() + ">");
+        writer.newLine();
+    }
+
+    @SneakyThrows
+    public static Node read(InputStream in) {
+        var reader = XMLInputFactory.newFactory().createXMLStreamReader(in);
+        var builder = new TreeBuilder();
+        var text = new StringBuilder();
+        try {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        flush(text, builder);
+                        builder.open(reader.getLocalName());
+                    }
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        flush(text, builder);
+                        builder.close();
+                    }
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> text.append(reader.getText());
+                    default -> {
+                        // ignore
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return builder.build();
+    }
+
+    private static void flush(StringBuilder text, TreeBuilder builder) {
+        var token = text.toString().trim();
+        if (!token.isEmpty()) {
+            builder.token(token);
+        }
+        text.setLength(0);
+    }
+}
@@ -0,0 +1,30 @@
+SELECT
+    col.owner AS relation_owner,
+    lower(col.table_name) AS relation_name,
+    lower(obj.object_type) AS relation_type,
+    tab_comments.comments AS relation_comment,
+    lower(col.column_name) AS column_name,
+    lower(col.data_type) AS data_type,
+    col_comments.comments AS column_comment
+FROM
+    all_tab_cols col
+        JOIN all_objects obj ON
+            col.owner = obj.owner AND
+            col.table_name = obj.object_name AND
+            obj.object_type IN ('TABLE', 'VIEW')
+        LEFT JOIN all_tab_comments tab_comments ON
+            col.owner = tab_comments.owner AND
+            col.table_name = tab_comments.table_name
+        LEFT JOIN all_col_comments col_comments ON
+            col.owner = col_comments.owner AND
+            col.table_name = col_comments.table_name AND
+            col.column_name = col_comments.column_name
+WHERE
+    col.owner != 'SYS' AND
+    col.table_name IN (
+        SELECT object_name
+        FROM all_objects
+        WHERE owner != 'SYS' AND object_type IN ('TABLE', 'VIEW') AND last_ddl_time >= ?
+    )
+ORDER BY
+    col.owner, col.table_name, col.column_id, col.column_name
@@ -0,0 +1,9 @@
+SELECT DISTINCT
+    owner
+FROM
+    all_objects
+WHERE
+    owner != 'SYS' AND
+    object_type IN ('TABLE', 'VIEW')
+ORDER BY
+    owner
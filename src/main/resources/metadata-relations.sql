@@ -0,0 +1,7 @@
+SELECT DISTINCT
+    lower(object_name) AS relation_name
+FROM
+    all_objects
+WHERE
+    owner != 'SYS' AND
+    object_type IN ('TABLE', 'VIEW')
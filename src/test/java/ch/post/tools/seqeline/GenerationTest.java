@@ -3,6 +3,7 @@ package ch.post.tools.seqeline;
 import ch.post.tools.seqeline.metadata.Schema;
 import ch.post.tools.seqeline.parser.Parser;
 import ch.post.tools.seqeline.process.TreeProcessor;
+import ch.post.tools.seqeline.tree.XmlTree;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.rdf4j.model.vocabulary.RDF;
@@ -62,7 +63,7 @@ class GenerationTest {
         var root = parser.parse(new ByteArrayInputStream(source.getBytes()));
         var tree = new StringWriter();
         if(interactiveDev()) {
-            root.write(tree);
+            XmlTree.write(root, tree);
         }
         var rdfText="<error>";
         try {
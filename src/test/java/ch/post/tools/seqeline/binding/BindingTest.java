@@ -0,0 +1,64 @@
+package ch.post.tools.seqeline.binding;
+
+import ch.post.tools.seqeline.stack.QualifiedName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BindingTest {
+
+    @Test
+    public void testChildrenOrder() {
+        new BindingSequence().run(() -> {
+            for (int size = 0; size < 40; size++) {
+                var binding = new Binding("parent", BindingType.STRUCTURE);
+                var expected = new HashMap<String, Binding>();
+                for (int i = 0; i < size; i++) {
+                    var child = new Binding("field_" + i * 7, BindingType.FIELD);
+                    assertSame(child, binding.addChild(child));
+                    expected.put(child.getName(), child);
+                }
+                assertEquals(new ArrayList<>(expected.values()), binding.children().toList());
+            }
+            return null;
+        });
+    }
+
+    @Test
+    public void testOutputsOrder() {
+        new BindingSequence().run(() -> {
+            for (int size = 0; size < 40; size++) {
+                var binding = new Binding("source", BindingType.VARIABLE);
+                var expected = new HashSet<Binding>();
+                List<Binding> outputs = new ArrayList<>();
+                for (int i = 0; i < size; i++) {
+                    outputs.add(new Binding("target", BindingType.RESULT));
+                }
+                for (var output : outputs) {
+                    binding.addOutput(output);
+                    binding.addOutput(output);
+                    expected.add(output);
+                }
+                assertEquals(new ArrayList<>(expected), binding.outputs().toList());
+            }
+            return null;
+        });
+    }
+
+    @Test
+    public void testDuplicateChild() {
+        new BindingSequence().run(() -> {
+            var binding = new Binding("pkg", BindingType.PACKAGE);
+            var first = binding.addChild(new Binding("f", BindingType.ROUTINE));
+            assertSame(first, binding.addChild(new Binding("f", BindingType.ROUTINE)));
+            assertEquals(1, binding.children().count());
+            assertTrue(binding.match(QualifiedName.of("pkg")).isPresent());
+            return null;
+        });
+    }
+}
@@ -0,0 +1,77 @@
+package ch.post.tools.seqeline.cache;
+
+import ch.post.tools.seqeline.process.TreeProcessor;
+import ch.post.tools.seqeline.tree.BinaryTree;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ManifestTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    public void testSaveAndLoad() {
+        var file = new File(dir, "manifest/manifest.json");
+        var manifest = new Manifest(file);
+        manifest.put("a/pkg.sql", new Manifest.Entry("s1", Manifest.VERSION, "m1", "t1", "g1"));
+        manifest.put("b/pkg.sql", new Manifest.Entry("s2", Manifest.VERSION, "m1", "t2", null));
+        manifest.save();
+
+        var loaded = new Manifest(file);
+        var a = loaded.get("a/pkg.sql").orElseThrow();
+        assertTrue(a.hasGraph("s1", "m1"));
+        assertFalse(a.hasGraph("s1", "m2"));
+        assertFalse(a.hasTree("s0"));
+        var b = loaded.get("b/pkg.sql").orElseThrow();
+        assertTrue(b.hasTree("s2"));
+        assertFalse(b.hasGraph("s2", "m1"));
+        assertTrue(loaded.get("pkg.sql").isEmpty());
+
+        loaded.remove("a/pkg.sql");
+        loaded.save();
+        assertTrue(new Manifest(file).get("a/pkg.sql").isEmpty());
+        assertTrue(new Manifest(file).get("b/pkg.sql").isPresent());
+    }
+
+    @Test
+    public void testRelations() {
+        var file = new File(dir, "manifest.json");
+        var manifest = new Manifest(file);
+        manifest.put("pkg.sql", new Manifest.Entry("s1", Manifest.VERSION, "m1", "t1", "g1", Map.of("emp", "f1", "missing", "none")));
+        manifest.save();
+
+        var entry = new Manifest(file).get("pkg.sql").orElseThrow();
+        var fingerprints = Map.of("emp", "f1", "dept", "f2");
+        assertTrue(entry.hasGraph("s1", "m2", name -> fingerprints.getOrDefault(name, "none")));
+        assertFalse(entry.hasGraph("s1", "m2", name -> name.equals("emp") ? "f3" : "none"));
+        assertFalse(entry.hasGraph("s1", "m2", name -> "f1"));
+        assertFalse(entry.hasGraph("s2", "m1", name -> fingerprints.getOrDefault(name, "none")));
+        assertFalse(new Manifest.Entry("s1", Manifest.VERSION, "m1", "t1", "g1").hasGraph("s1", "m2", name -> "none"));
+    }
+
+    @Test
+    public void testOtherVersion() {
+        var entry = new Manifest.Entry("s1", "0.1/tree-0", "m1", "t1", "g1");
+        assertFalse(entry.hasTree("s1"));
+    }
+
+    @Test
+    public void testVersion() {
+        assertFalse(Manifest.VERSION.contains("${"));
+        assertTrue(Manifest.VERSION.endsWith("/tree-" + BinaryTree.VERSION + "/graph-" + TreeProcessor.VERSION));
+    }
+
+    @Test
+    public void testHash() {
+        assertEquals(Manifest.hash(new ByteArrayInputStream("a".getBytes())), Manifest.hash(new ByteArrayInputStream("a".getBytes())));
+        assertNotEquals(Manifest.hash(new ByteArrayInputStream("a".getBytes())), Manifest.hash(new ByteArrayInputStream("b".getBytes())));
+        assertEquals("none", Manifest.hash(new File(dir, "missing")));
+    }
+}
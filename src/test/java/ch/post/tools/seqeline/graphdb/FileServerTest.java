@@ -0,0 +1,84 @@
+package ch.post.tools.seqeline.graphdb;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileServerTest {
+
+    @TempDir
+    Path dir;
+
+    private FileServer server;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    public void start() throws IOException {
+        Files.writeString(dir.resolve("a.nq"), "0123456789");
+        Files.writeString(dir.resolve("b.nq"), "abcdef");
+        server = new FileServer(0, dir.toString());
+        server.register("/batch/a.nq", List.of(dir.resolve("a.nq"), dir.resolve("b.nq")));
+    }
+
+    @AfterEach
+    public void stop() {
+        server.stop();
+    }
+
+    @Test
+    public void testFile() throws Exception {
+        var response = get("/a.nq");
+        assertEquals(200, response.statusCode());
+        assertEquals("0123456789", body(response));
+        assertEquals("application/n-quads", response.headers().firstValue("Content-Type").orElseThrow());
+        assertEquals(404, get("/missing.nq").statusCode());
+    }
+
+    @Test
+    public void testRanges() throws Exception {
+        var response = get("/batch/a.nq", "Range", "bytes=8-11");
+        assertEquals(206, response.statusCode());
+        assertEquals("bytes 8-11/16", response.headers().firstValue("Content-Range").orElseThrow());
+        assertEquals("89ab", body(response));
+        assertEquals("cdef", body(get("/batch/a.nq", "Range", "bytes=12-")));
+        assertEquals("ef", body(get("/batch/a.nq", "Range", "bytes=-2")));
+        assertEquals(416, get("/batch/a.nq", "Range", "bytes=20-").statusCode());
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+        var response = get("/batch/a.nq", "Accept-Encoding", "gzip");
+        assertEquals(200, response.statusCode());
+        assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElseThrow());
+        var content = new GZIPInputStream(new ByteArrayInputStream(response.body())).readAllBytes();
+        assertEquals("0123456789abcdef", new String(content, StandardCharsets.UTF_8));
+    }
+
+    private HttpResponse<byte[]> get(String path, String... headers) throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + path));
+        if (headers.length > 0) {
+            request.headers(headers);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static String body(HttpResponse<byte[]> response) {
+        return new String(response.body(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,186 @@
+package ch.post.tools.seqeline.graphdb;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Publishes against a local HTTP server standing in for the GraphDB import API.
+ */
+class GraphDbPublisherTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @TempDir
+    Path dir;
+
+    private HttpServer graphDb;
+
+    private final List<JsonNode> imports = new CopyOnWriteArrayList<>();
+
+    private final Map<String, String> contents = new ConcurrentHashMap<>();
+
+    private final Map<String, String> statuses = new ConcurrentHashMap<>();
+
+    private final AtomicInteger rejections = new AtomicInteger();
+
+    private volatile String finalStatus = "DONE";
+
+    @BeforeEach
+    public void startGraphDb() throws IOException {
+        graphDb = HttpServer.create(new InetSocketAddress(0), 0);
+        graphDb.createContext("/repo/import/upload/url", this::startImport);
+        graphDb.createContext("/repo/import/upload", this::status);
+        graphDb.start();
+    }
+
+    @AfterEach
+    public void stopGraphDb() {
+        graphDb.stop(0);
+    }
+
+    @Test
+    public void testBatchAndRetry() throws Exception {
+        rejections.set(1);
+        write("a.trig", "<a> <p> <o> <a> .\n");
+        write("b.trig", "<b> <p> <o> <b> .\n");
+        write("c/c.trig", "<c> <p> <o> <c> .\n");
+        write("d.brf", "binary");
+        var publisher = publisher(2);
+        try {
+            publisher.publish("urn:a", "a.trig");
+            publisher.publish("urn:b", "b.trig");
+            publisher.publish("urn:c", "c/c.trig");
+            publisher.publish("urn:d", "d.brf");
+            publisher.start();
+            assertEquals(List.of(), publisher.await());
+        } finally {
+            publisher.close();
+        }
+
+        assertEquals(0, rejections.get());
+        assertEquals(2, imports.size());
+        var batch = imported("urn:a");
+        assertEquals(List.of("urn:a", "urn:b", "urn:c"), mapper.convertValue(batch.get("replaceGraphs"), List.class));
+        assertEquals("application/trig", batch.get("format").asText());
+        assertEquals("<a> <p> <o> <a> .\n<b> <p> <o> <b> .\n<c> <p> <o> <c> .\n", contents.get(batch.get("name").asText()));
+        var binary = imported("urn:d");
+        assertEquals(List.of("urn:d"), mapper.convertValue(binary.get("replaceGraphs"), List.class));
+        assertEquals("binary", contents.get(binary.get("name").asText()));
+    }
+
+    @Test
+    public void testFailedImport() throws Exception {
+        finalStatus = "ERROR";
+        write("a.nq", "<a> <p> <o> <a> .\n");
+        var publisher = publisher(1);
+        try {
+            publisher.start();
+            publisher.publish("urn:a", "a.nq");
+            assertEquals(List.of("a.nq"), publisher.await());
+        } finally {
+            publisher.close();
+        }
+        assertEquals(2, imports.size());
+    }
+
+    @Test
+    public void testImportNamesPerRun() throws Exception {
+        write("a.nq", "<a> <p> <o> <a> .\n");
+        int port;
+        try (var socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        for (int run = 0; run < 2; run++) {
+            var publisher = publisher(1, port);
+            try {
+                publisher.start();
+                publisher.publish("urn:a", "a.nq");
+                assertEquals(List.of(), publisher.await());
+            } finally {
+                publisher.close();
+            }
+        }
+        assertEquals(2, imports.size());
+        assertNotEquals(imports.get(0).get("name").asText(), imports.get(1).get("name").asText());
+    }
+
+    private JsonNode imported(String graphName) {
+        return imports.stream()
+                .filter(request -> request.get("replaceGraphs").get(0).asText().equals(graphName))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private GraphDbPublisher publisher(int concurrency) {
+        return publisher(concurrency, 0);
+    }
+
+    private GraphDbPublisher publisher(int concurrency, int port) {
+        return new GraphDbPublisher("http://localhost:" + graphDb.getAddress().getPort() + "/repo/", dir.toString(), port,
+                concurrency, 10, 1, Duration.ofMillis(10), Duration.ofMillis(10), Duration.ofSeconds(10));
+    }
+
+    private void write(String path, String content) throws IOException {
+        var file = dir.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+
+    private void startImport(HttpExchange exchange) throws IOException {
+        if (rejections.getAndUpdate(count -> Math.max(0, count - 1)) > 0) {
+            respond(exchange, 503, "busy");
+            return;
+        }
+        var request = mapper.readTree(exchange.getRequestBody());
+        imports.add(request);
+        var name = request.get("name").asText();
+        statuses.put(name, "IMPORTING");
+        respond(exchange, 200, "");
+        // Download the data like GraphDB does, after answering the request
+        new Thread(() -> {
+            try (var in = URI.create(request.get("data").asText()).toURL().openStream()) {
+                contents.put(name, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                statuses.put(name, finalStatus);
+            } catch (IOException e) {
+                statuses.put(name, "ERROR");
+            }
+        }).start();
+    }
+
+    private void status(HttpExchange exchange) throws IOException {
+        var list = mapper.createArrayNode();
+        statuses.forEach((name, status) -> list.addObject().put("name", name).put("status", status));
+        respond(exchange, 200, list.toString());
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            exchange.getResponseBody().write(bytes);
+        }
+        exchange.close();
+    }
+}
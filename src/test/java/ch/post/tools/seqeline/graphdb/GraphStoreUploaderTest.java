@@ -0,0 +1,127 @@
+package ch.post.tools.seqeline.graphdb;
+
+import ch.post.tools.seqeline.process.GraphFormat;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.eclipse.rdf4j.model.util.Statements.statement;
+import static org.eclipse.rdf4j.model.util.Values.iri;
+import static org.eclipse.rdf4j.model.util.Values.literal;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Uploads to a local HTTP server implementing the Graph Store protocol on top of an in-memory repository.
+ */
+class GraphStoreUploaderTest {
+
+    private final SailRepository repository = new SailRepository(new MemoryStore());
+
+    private final List<String> encodings = new CopyOnWriteArrayList<>();
+
+    private HttpServer server;
+
+    @BeforeEach
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(0), 0);
+        server.createContext("/repositories/lineage/rdf-graphs/service", this::replaceGraph);
+        server.start();
+    }
+
+    @AfterEach
+    public void stop() {
+        server.stop(0);
+        repository.shutDown();
+    }
+
+    @Test
+    public void testReplaceGraphs() {
+        var uploader = new GraphStoreUploader("http://localhost:" + server.getAddress().getPort() + "/repositories/lineage/");
+        upload(uploader, "urn:graph:a", GraphFormat.TRIG, "first");
+        upload(uploader, "urn:graph:b", GraphFormat.BINARY, "other");
+        upload(uploader, "urn:graph:a", GraphFormat.NQUADS, "second");
+
+        try (var connection = repository.getConnection()) {
+            assertEquals(1, connection.size(iri("urn:graph:a")));
+            assertTrue(connection.hasStatement(iri("urn:s"), iri("urn:p"), literal("second"), false, iri("urn:graph:a")));
+            assertTrue(connection.hasStatement(iri("urn:s"), iri("urn:p"), literal("other"), false, iri("urn:graph:b")));
+        }
+        assertEquals(List.of("chunked", "chunked", "chunked"), encodings);
+    }
+
+    @Test
+    public void testRejectedUpload() {
+        var uploader = new GraphStoreUploader("http://localhost:" + server.getAddress().getPort() + "/repositories/missing");
+        var e = assertThrows(GraphStoreUploader.UploadException.class, () -> upload(uploader, "urn:graph:a", GraphFormat.TRIG, "value"));
+        assertTrue(e.getMessage().contains("404"));
+    }
+
+    @Test
+    public void testAbortedUpload() {
+        var uploader = new GraphStoreUploader("http://localhost:" + server.getAddress().getPort() + "/repositories/lineage");
+        upload(uploader, "urn:graph:a", GraphFormat.NQUADS, "first");
+
+        // Generation failing after some statements were sent
+        assertThrows(IllegalStateException.class, () -> {
+            try (var upload = uploader.open("urn:graph:a", GraphFormat.NQUADS)) {
+                var handler = upload.handler();
+                handler.startRDF();
+                handler.handleStatement(statement(iri("urn:s"), iri("urn:p"), literal("partial"), iri("urn:graph:a")));
+                throw new IllegalStateException("Generation failed");
+            }
+        });
+        // Generation failing before any statement
+        try (var upload = uploader.open("urn:graph:a", GraphFormat.NQUADS)) {
+            upload.handler().startRDF();
+        }
+
+        upload(uploader, "urn:graph:b", GraphFormat.NQUADS, "other");
+        try (var connection = repository.getConnection()) {
+            assertEquals(1, connection.size(iri("urn:graph:a")));
+            assertTrue(connection.hasStatement(iri("urn:s"), iri("urn:p"), literal("first"), false, iri("urn:graph:a")));
+        }
+    }
+
+    private static void upload(GraphStoreUploader uploader, String graphName, GraphFormat format, String value) {
+        try (var upload = uploader.open(graphName, format)) {
+            var handler = upload.handler();
+            handler.startRDF();
+            handler.handleStatement(statement(iri("urn:s"), iri("urn:p"), literal(value), iri(graphName)));
+            handler.endRDF();
+            upload.commit();
+        }
+    }
+
+    private void replaceGraph(HttpExchange exchange) throws IOException {
+        encodings.add(exchange.getRequestHeaders().getFirst("Transfer-Encoding"));
+        var query = URLDecoder.decode(exchange.getRequestURI().getRawQuery(), StandardCharsets.UTF_8);
+        IRI graph = iri(query.substring("graph=".length()));
+        var type = exchange.getRequestHeaders().getFirst("Content-Type").replaceAll(";.*", "");
+        var format = Rio.getParserFormatForMIMEType(type).orElse(RDFFormat.TRIG);
+        // Read the body to its end, so that the connection is kept alive
+        var model = Rio.parse(new ByteArrayInputStream(exchange.getRequestBody().readAllBytes()), "", format);
+        try (var connection = repository.getConnection()) {
+            connection.begin();
+            connection.clear(graph);
+            connection.add(model, graph);
+            connection.commit();
+        }
+        exchange.sendResponseHeaders(204, -1);
+        exchange.close();
+    }
+}
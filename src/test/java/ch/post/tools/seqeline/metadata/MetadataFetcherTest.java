@@ -0,0 +1,142 @@
+package ch.post.tools.seqeline.metadata;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the fetch queries against an in-memory database standing in for the Oracle dictionary views.
+ */
+class MetadataFetcherTest {
+
+    @Test
+    public void testFetchRelations() throws SQLException, IOException {
+        var url = dictionary("full");
+        try (var connection = DriverManager.getConnection(url, "sa", "");
+             var statement = connection.createStatement()) {
+            statement.execute("""
+                    INSERT INTO all_objects (owner, object_name, object_type) VALUES ('SALES', 'EMPLOYEE', 'TABLE');
+                    INSERT INTO all_tab_cols VALUES ('SALES', 'EMPLOYEE', 'ID', 'NUMBER', 1), ('SALES', 'EMPLOYEE', 'REGION', 'VARCHAR2', 2);
+                    """);
+        }
+        var out = new ByteArrayOutputStream();
+        new MetadataFetcher(url, "sa", "").fetchRelations(out, 2);
+
+        var schema = new Schema();
+        schema.populate(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(3, schema.relations().count());
+        assertEquals(3, new ObjectMapper().readTree(out.toByteArray()).get("relations").size());
+
+        // Merged with the table of the same name in another owner
+        var employee = schema.relation("employee").orElseThrow();
+        assertEquals("table", employee.type());
+        assertEquals("our workforce", employee.comment());
+        assertEquals(3, employee.columns().size());
+        assertEquals(new Relation.Column("name", "full name"), employee.columns().get(1));
+        assertEquals(new Relation.Column("region", null), employee.columns().get(2));
+
+        assertEquals("view", schema.relation("v_employee").orElseThrow().type());
+        assertEquals(2, schema.relation("orders").orElseThrow().columns().size());
+        assertTrue(schema.relation("dual").isEmpty());
+
+        // Owners are written in order, whatever the number of workers
+        var sequential = new ByteArrayOutputStream();
+        new MetadataFetcher(url, "sa", "").fetchRelations(sequential, 1);
+        assertArrayEquals(sequential.toByteArray(), out.toByteArray());
+    }
+
+    @Test
+    public void testFetchChanges() throws SQLException, IOException {
+        var url = dictionary("incremental");
+        var fetcher = new MetadataFetcher(url, "sa", "");
+        var full = new ByteArrayOutputStream();
+        fetcher.fetchRelations(full, 1);
+        var watermark = Timestamp.valueOf("2024-01-01 00:00:00");
+
+        try (var connection = DriverManager.getConnection(url, "sa", "");
+             var statement = connection.createStatement()) {
+            statement.execute("""
+                    INSERT INTO all_tab_cols VALUES ('SALES', 'ORDERS', 'AMOUNT', 'NUMBER', 3);
+                    UPDATE all_objects SET last_ddl_time = TIMESTAMP '2024-02-01 00:00:00' WHERE object_name = 'ORDERS';
+                    DELETE FROM all_objects WHERE object_name = 'V_EMPLOYEE';
+                    INSERT INTO all_objects VALUES ('TRADE', 'ORDERS', 'TABLE', TIMESTAMP '2023-06-01 00:00:00');
+                    INSERT INTO all_tab_cols VALUES ('TRADE', 'ORDERS', 'ID', 'NUMBER', 1), ('TRADE', 'ORDERS', 'REGION', 'VARCHAR2', 2);
+                    """);
+        }
+
+        var out = new ByteArrayOutputStream();
+        fetcher.fetchChanges(new ByteArrayInputStream(full.toByteArray()), watermark, out);
+
+        var schema = new Schema();
+        schema.populate(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(2, schema.relations().count());
+        assertEquals("our workforce", schema.relation("employee").orElseThrow().comment());
+        assertTrue(schema.relation("v_employee").isEmpty());
+
+        // Merged with the unchanged relation of the same name in another owner, as in a full fetch
+        var orders = schema.relation("orders").orElseThrow();
+        assertEquals(List.of("id", "employee_id", "amount", "region"), orders.columns().stream().map(Relation.Column::name).toList());
+        var refetched = new ByteArrayOutputStream();
+        fetcher.fetchRelations(refetched, 1);
+        var reference = new Schema();
+        reference.populate(new ByteArrayInputStream(refetched.toByteArray()));
+        assertEquals(reference.relation("orders"), schema.relation("orders"));
+
+        // Unchanged relations are kept as fetched, with their column types and comment case, in their order
+        var mapper = new ObjectMapper();
+        var fullRelations = mapper.readTree(full.toByteArray()).get("relations");
+        var updatedRelations = mapper.readTree(out.toByteArray()).get("relations");
+        assertEquals(fullRelations.get(0), updatedRelations.get(0));
+        assertEquals("Our workforce", updatedRelations.get(0).get("comment").asText());
+        assertEquals("number", updatedRelations.get(0).get("columns").get(0).get("type").asText());
+        assertEquals("orders", updatedRelations.get(1).get("name").asText());
+
+        // Changes made in the second of the watermark are fetched again
+        try (var connection = DriverManager.getConnection(url, "sa", "");
+             var statement = connection.createStatement()) {
+            statement.execute("INSERT INTO all_tab_cols VALUES ('SALES', 'ORDERS', 'STATUS', 'VARCHAR2', 4)");
+        }
+        var again = new ByteArrayOutputStream();
+        fetcher.fetchChanges(new ByteArrayInputStream(out.toByteArray()), Timestamp.valueOf("2024-02-01 00:00:00"), again);
+        schema = new Schema();
+        schema.populate(new ByteArrayInputStream(again.toByteArray()));
+        assertEquals(5, schema.relation("orders").orElseThrow().columns().size());
+    }
+
+    /**
+     * Creates an in-memory database with the dictionary views, all objects being last changed in 2023.
+     */
+    private static String dictionary(String name) throws SQLException {
+        var url = "jdbc:h2:mem:" + name + ";MODE=Oracle;DB_CLOSE_DELAY=-1";
+        try (var connection = DriverManager.getConnection(url, "sa", "");
+             var statement = connection.createStatement()) {
+            statement.execute("""
+                    CREATE TABLE all_objects (owner VARCHAR, object_name VARCHAR, object_type VARCHAR, last_ddl_time TIMESTAMP DEFAULT TIMESTAMP '2023-06-01 00:00:00');
+                    CREATE TABLE all_tab_cols (owner VARCHAR, table_name VARCHAR, column_name VARCHAR, data_type VARCHAR, column_id INT);
+                    CREATE TABLE all_tab_comments (owner VARCHAR, table_name VARCHAR, comments VARCHAR);
+                    CREATE TABLE all_col_comments (owner VARCHAR, table_name VARCHAR, column_name VARCHAR, comments VARCHAR);
+
+                    INSERT INTO all_objects (owner, object_name, object_type) VALUES
+                        ('HR', 'EMPLOYEE', 'TABLE'), ('HR', 'EMPLOYEE_PK', 'INDEX'), ('HR', 'V_EMPLOYEE', 'VIEW'),
+                        ('SALES', 'ORDERS', 'TABLE'), ('SYS', 'DUAL', 'TABLE');
+                    INSERT INTO all_tab_cols VALUES
+                        ('HR', 'EMPLOYEE', 'ID', 'NUMBER', 1), ('HR', 'EMPLOYEE', 'NAME', 'VARCHAR2', 2),
+                        ('HR', 'V_EMPLOYEE', 'NAME', 'VARCHAR2', 1),
+                        ('SALES', 'ORDERS', 'ID', 'NUMBER', 1), ('SALES', 'ORDERS', 'EMPLOYEE_ID', 'NUMBER', 2),
+                        ('SYS', 'DUAL', 'DUMMY', 'VARCHAR2', 1);
+                    INSERT INTO all_tab_comments VALUES ('HR', 'EMPLOYEE', 'Our workforce');
+                    INSERT INTO all_col_comments VALUES ('HR', 'EMPLOYEE', 'NAME', 'Full name');
+                    """);
+        }
+        return url;
+    }
+}
@@ -0,0 +1,110 @@
+package ch.post.tools.seqeline.metadata;
+
+import ch.post.tools.seqeline.binding.BindingSequence;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    public void testSnapshot() throws IOException {
+        var schemaFile = new File(dir, "schema.json");
+        Files.writeString(schemaFile.toPath(), """
+                {
+                    "relations": [
+                        {
+                            "name": "EMPLOYEE",
+                            "type": "table",
+                            "comment": "Our workforce",
+                            "columns": [
+                                { "name": "FIRSTNAME", "comment": "Given name" },
+                                { "name": "LASTNAME" }
+                            ]
+                        },
+                        { "name": "V_EMP", "type": "view", "columns": [ { "name": "ID" } ] },
+                        { "name": "SEQ", "type": "sequence", "columns": [ { "name": "ID" } ] }
+                    ]
+                }
+                """);
+
+        var compiled = new Schema(schemaFile);
+        assertTrue(new File(dir, "schema.bin").exists());
+        var snapshot = new Schema(schemaFile);
+
+        for (var schema : new Schema[]{compiled, snapshot}) {
+            assertEquals(2, schema.relations().count());
+            var employee = schema.relation("employee").orElseThrow();
+            assertEquals("table", employee.type());
+            assertEquals("our workforce", employee.comment());
+            assertEquals(new Relation.Column("firstname", "given name"), employee.columns().get(0));
+            assertEquals(new Relation.Column("lastname", null), employee.columns().get(1));
+            assertEquals(1, schema.relation("v_emp").orElseThrow().columns().size());
+            assertTrue(schema.relation("seq").isEmpty());
+            assertTrue(schema.relation("missing").isEmpty());
+            var binding = new BindingSequence().run(() -> schema.resolve("employee").orElseThrow());
+            assertEquals(2, binding.children().count());
+        }
+    }
+
+    @Test
+    public void testOutdatedSnapshot() throws IOException {
+        var schemaFile = new File(dir, "schema.json");
+        Files.writeString(schemaFile.toPath(), """
+                { "relations": [ { "name": "A", "type": "table", "columns": [ { "name": "ID" } ] } ] }
+                """);
+        new Schema(schemaFile);
+        Files.writeString(schemaFile.toPath(), """
+                { "relations": [ { "name": "BB", "type": "table", "columns": [ { "name": "ID" } ] } ] }
+                """);
+        var schema = new Schema(schemaFile);
+        assertTrue(schema.relation("a").isEmpty());
+        assertTrue(schema.relation("bb").isPresent());
+    }
+
+    @Test
+    public void testSameSizeAndTime() throws IOException {
+        var schemaFile = new File(dir, "schema.json");
+        Files.writeString(schemaFile.toPath(), """
+                { "relations": [ { "name": "A", "type": "table", "columns": [ { "name": "ID" } ] } ] }
+                """);
+        var modified = schemaFile.lastModified();
+        new Schema(schemaFile);
+        Files.writeString(schemaFile.toPath(), """
+                { "relations": [ { "name": "B", "type": "table", "columns": [ { "name": "ID" } ] } ] }
+                """);
+        assertTrue(schemaFile.setLastModified(modified));
+        var schema = new Schema(schemaFile);
+        assertTrue(schema.relation("a").isEmpty());
+        assertTrue(schema.relation("b").isPresent());
+    }
+
+    @Test
+    public void testFingerprint() throws IOException {
+        var schemaFile = new File(dir, "schema.json");
+        Files.writeString(schemaFile.toPath(), """
+                { "relations": [
+                    { "name": "A", "type": "table", "columns": [ { "name": "ID" } ] },
+                    { "name": "B", "type": "table", "columns": [ { "name": "ID" } ] } ] }
+                """);
+        var before = new Schema(schemaFile);
+        Files.writeString(schemaFile.toPath(), """
+                { "relations": [
+                    { "name": "A", "type": "table", "columns": [ { "name": "ID" } ] },
+                    { "name": "B", "type": "table", "columns": [ { "name": "ID" }, { "name": "NAME" } ] } ] }
+                """);
+        var after = new Schema(schemaFile);
+        assertEquals(before.fingerprint("a"), after.fingerprint("a"));
+        assertNotEquals(before.fingerprint("b"), after.fingerprint("b"));
+        assertNotEquals(after.fingerprint("a"), after.fingerprint("b"));
+        assertEquals("none", after.fingerprint("missing"));
+    }
+}
@@ -1,28 +1,136 @@
 package ch.post.tools.seqeline.parser;
 
-import org.joox.Match;
+import ch.post.tools.seqeline.tree.Node;
+import ch.post.tools.seqeline.tree.XmlTree;
+import org.antlr.grammars.plsql.PlSqlLexer;
+import org.antlr.grammars.plsql.PlSqlParser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.junit.jupiter.api.Test;
-import org.xml.sax.SAXException;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class ParserTest {
 
     @Test
-    public void testSimpleCode() throws IOException, SAXException {
+    public void testSimpleCode() throws IOException {
         var input = """
                 select * from dual;
                 """;
-        Match root = new Parser().parse(new ByteArrayInputStream(input.getBytes()));
+        Node root = new Parser().parse(new ByteArrayInputStream(input.getBytes()));
         assertFalse(root.find("select_only_statement").isEmpty());
-        assertEquals("dual", root.find("id_expression").text().trim());
+        assertEquals("dual", root.find("id_expression").first().text());
     }
 
     @Test
-    public void testConditionalCompilation() throws IOException, SAXException {
+    public void testSllPrediction() throws IOException {
+        var input = """
+                select * from dual;
+                """;
+        var parser = new Parser();
+        parser.parse(new ByteArrayInputStream(input.getBytes()));
+        assertEquals(PredictionMode.SLL, parser.getPredictionMode());
+    }
+
+    @Test
+    public void testSyntaxError() {
+        var input = """
+                select * from from dual;
+                """;
+        var parser = new Parser();
+        assertThrows(ParseException.class, () -> parser.parse(new ByteArrayInputStream(input.getBytes())));
+        assertEquals(PredictionMode.LL, parser.getPredictionMode());
+    }
+
+    @Test
+    public void testErrorLine() {
+        var input = """
+                select * from dual;
+                /
+                
+                select *
+                from from dual;
+                """;
+        var errors = new ArrayList<String>();
+        var parser = new Parser(errors::add);
+        assertThrows(ParseException.class, () -> parser.parse(new ByteArrayInputStream(input.getBytes())));
+        assertFalse(errors.isEmpty());
+        assertTrue(errors.get(0).startsWith("line 5:5 "), errors.get(0));
+    }
+
+    @Test
+    public void testParallelUnits() throws Exception {
+        var script = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            script.append("select a").append(i).append(" from t").append(i).append(";\n/\n");
+        }
+        var input = script.toString().getBytes();
+        var expected = xml(new Parser().parse(new ByteArrayInputStream(input)));
+        var broken = script.toString().replace("from t3", "from from t3").replace("from t12", "from from t12").getBytes();
+
+        // Files are parsed on the executor their units are submitted to
+        var executor = Executors.newFixedThreadPool(2);
+        try {
+            var files = new ArrayList<Future<String>>();
+            for (int i = 0; i < 4; i++) {
+                files.add(executor.submit(() -> xml(new Parser(executor, 4, message -> {}).parse(new ByteArrayInputStream(input)))));
+            }
+            for (var file : files) {
+                assertEquals(expected, file.get(1, TimeUnit.MINUTES));
+            }
+            var errors = new ArrayList<String>();
+            var parser = new Parser(executor, 4, errors::add);
+            assertThrows(ParseException.class, () -> parser.parse(new ByteArrayInputStream(broken)));
+            assertTrue(errors.get(0).startsWith("line 7:"), errors.get(0));
+            assertTrue(errors.get(errors.size() - 1).startsWith("line 25:"), errors.get(errors.size() - 1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLeftRecursion() throws IOException {
+        var root = assertWalked("""
+                BEGIN
+                    n := a + b * c - d;
+                    s := a || b || c || d;
+                    x := CASE WHEN a > 0 THEN CASE b WHEN 1 THEN c ELSE d END ELSE e END;
+                    SELECT a + b * c - d, a || b || c INTO n, s FROM t WHERE a > b AND (c < d OR d = a + b);
+                END;
+                """);
+        var cases = root.find("case_statement");
+        assertEquals(2, cases.size());
+        assertEquals(1, cases.first().find("case_statement").size());
+        assertWalked("""
+                CREATE TABLE t (a NUMBER, b CLOB, c CLOB) LOB (b) STORE AS (CHUNK 4096) LOB (c) STORE AS (CACHE);
+                """);
+    }
+
+    /**
+     * Checks that the tree pruned while parsing is the one obtained by applying the pruning rules to a complete
+     * parse tree, whose left-recursive nodes are entered before their first operand.
+     */
+    private static Node assertWalked(String input) throws IOException {
+        var root = new Parser().parse(new ByteArrayInputStream(input.getBytes()));
+        var parser = new PlSqlParser(new CommonTokenStream(new PlSqlLexer(CharStreams.fromString(input))));
+        var listener = new Parser.PruningListener(parser, new ArrayList<>());
+        ParseTreeWalker.DEFAULT.walk(listener, parser.sql_script());
+        assertEquals(xml(listener.builder.build()), xml(root));
+        return root;
+    }
+
+    @Test
+    public void testConditionalCompilation() throws IOException {
         var input = """
                 $IF debug
                 select * from dual;
@@ -34,7 +142,7 @@ class ParserTest {
     }
 
     @Test
-    public void testJavaSource() throws IOException, SAXException {
+    public void testJavaSource() throws IOException {
         var input = """
             CREATE OR REPLACE AND RESOLVE JAVA SOURCE NAMED "Test"
             AS
@@ -50,4 +158,9 @@ class ParserTest {
         }
     }
 
+    private static String xml(Node root) throws IOException {
+        var writer = new StringWriter();
+        XmlTree.write(root, writer);
+        return writer.toString();
+    }
 }
\ No newline at end of file
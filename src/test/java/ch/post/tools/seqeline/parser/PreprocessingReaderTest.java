@@ -0,0 +1,37 @@
+package ch.post.tools.seqeline.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PreprocessingReaderTest {
+
+    @Test
+    public void testConditionalCompilation() throws IOException {
+        var input = "$IF debug\r\nselect * from dual;\r\n$END\r\nselect 1 from dual;";
+        assertEquals("\nselect * from dual;\n\nselect 1 from dual;\n", read(input));
+    }
+
+    @Test
+    public void testJavaSource() {
+        var input = """
+            select * from dual;
+            CREATE OR REPLACE AND RESOLVE JAVA SOURCE NAMED "Test"
+            AS
+            """;
+        var exception = assertThrows(ParseException.class, () -> read(input));
+        assertTrue(exception.isSkipped());
+    }
+
+    private static String read(String input) throws IOException {
+        var out = new StringWriter();
+        try (var reader = new PreprocessingReader(new StringReader(input))) {
+            reader.transferTo(out);
+        }
+        return out.toString();
+    }
+}
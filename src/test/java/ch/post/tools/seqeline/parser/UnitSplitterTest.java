@@ -0,0 +1,84 @@
+package ch.post.tools.seqeline.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UnitSplitterTest {
+
+    @Test
+    public void testSplit() throws IOException {
+        var input = """
+                CREATE OR REPLACE PACKAGE pkg IS
+                END;
+                /
+                CREATE OR REPLACE VIEW v AS SELECT 1 AS a FROM dual;
+                  /
+                SELECT 'é', '€', '\uD83D\uDE00' FROM dual;
+                """;
+        assertEquals(List.of(
+                "CREATE OR REPLACE PACKAGE pkg IS\nEND;\n",
+                "CREATE OR REPLACE VIEW v AS SELECT 1 AS a FROM dual;\n",
+                "SELECT 'é', '€', '\uD83D\uDE00' FROM dual;\n"
+        ), split(input));
+    }
+
+    @Test
+    public void testQuotesAndComments() throws IOException {
+        var input = """
+                select 'a
+                /
+                ', q'[it's
+                /
+                ]', "x
+                /
+                " from dual; /* comment
+                /
+                */ -- 'not a string
+                /
+                select 1 from dual;
+                """;
+        var units = split(input);
+        assertEquals(2, units.size());
+        assertTrue(units.get(0).endsWith("*/ -- 'not a string\n"));
+    }
+
+    @Test
+    public void testLines() throws IOException {
+        var splitter = new UnitSplitter(new StringReader("""
+                
+                select 1 from dual;
+                /
+                /
+                
+                select 2
+                from dual;
+                /
+                select 3 from dual;
+                """));
+        assertEquals(1, splitter.next().line());
+        assertEquals(5, splitter.next().line());
+        assertEquals(9, splitter.next().line());
+        assertNull(splitter.next());
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        assertEquals(List.of(""), split(""));
+    }
+
+    private static List<String> split(String input) throws IOException {
+        var splitter = new UnitSplitter(new StringReader(input));
+        var units = new ArrayList<String>();
+        UnitSplitter.Unit unit;
+        while ((unit = splitter.next()) != null) {
+            units.add(unit.text().toString());
+        }
+        return units;
+    }
+}
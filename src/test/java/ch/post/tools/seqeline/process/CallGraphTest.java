@@ -0,0 +1,64 @@
+package ch.post.tools.seqeline.process;
+
+import org.eclipse.rdf4j.rio.helpers.StatementCollector;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.eclipse.rdf4j.model.util.Values.iri;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CallGraphTest {
+
+    @Test
+    public void testMergeAndCsv() throws IOException {
+        var first = new CallGraph();
+        first.add("pkg.load", "util.log");
+        first.add("pkg.load", "pkg.load");
+        var second = new CallGraph();
+        second.add("pkg.load", "util.log");
+        second.add("standalone", "\"odd,name\"");
+        first.merge(second);
+        assertEquals(2, first.size());
+
+        var csv = new StringWriter();
+        first.writeCsv(csv);
+        assertEquals("caller,callee\npkg.load,util.log\nstandalone,\"\"\"odd,name\"\"\"\n", csv.toString());
+
+        var copy = new StringWriter();
+        CallGraph.readCsv(new StringReader(csv.toString())).writeCsv(copy);
+        assertEquals(csv.toString(), copy.toString());
+    }
+
+    @Test
+    public void testGraph() {
+        var callGraph = new CallGraph();
+        callGraph.add("pkg.load", "util.log");
+        callGraph.add("standalone", "pkg.load");
+        var collector = new StatementCollector();
+        callGraph.write(iri("urn:dependencies"), "urn:data/", "urn:line/", collector);
+
+        var triples = collector.getStatements().stream()
+                .map(statement -> statement.getSubject() + " " + statement.getPredicate().getLocalName() + " " + statement.getObject())
+                .toList();
+        assertEquals(List.of(
+                "urn:data/pkg member urn:data/pkg.load",
+                "urn:data/util member urn:data/util.log",
+                "urn:data/pkg.load dependency urn:data/util.log",
+                "urn:data/standalone dependency urn:data/pkg.load"), triples);
+    }
+
+    @Test
+    public void testDot() throws IOException {
+        var callGraph = new CallGraph();
+        callGraph.add("pkg.load", "util.log");
+        var dot = new StringWriter();
+        callGraph.writeDot(dot);
+        assertTrue(dot.toString().contains("label=\"pkg\";"));
+        assertTrue(dot.toString().contains("\"pkg.load\" [label=\"load\"];"));
+        assertTrue(dot.toString().contains("\"pkg.load\" -> \"util.log\";"));
+    }
+}
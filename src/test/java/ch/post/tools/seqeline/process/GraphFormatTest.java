@@ -0,0 +1,21 @@
+package ch.post.tools.seqeline.process;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphFormatTest {
+
+    @Test
+    public void testExtensions() {
+        for (var format : GraphFormat.values()) {
+            assertEquals(Optional.of(format), GraphFormat.of("dir/unit" + format.extension(false)));
+            assertEquals(Optional.of(format), GraphFormat.of("dir/unit" + format.extension(true)));
+        }
+        assertEquals(".nq.gz", GraphFormat.NQUADS.extension(true));
+        assertTrue(GraphFormat.isCompressed("unit.brf.gz"));
+        assertEquals(Optional.empty(), GraphFormat.of("unit.sql"));
+    }
+}
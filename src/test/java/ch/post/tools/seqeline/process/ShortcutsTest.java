@@ -0,0 +1,116 @@
+package ch.post.tools.seqeline.process;
+
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
+import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.StatementCollector;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import static org.eclipse.rdf4j.model.util.Values.iri;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the shortcuts against the results of simpllify.sparql.
+ */
+class ShortcutsTest {
+
+    private static final String GRAPH = """
+            @prefix line: <https://schema.post.ch/lineage/> .
+            @prefix rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> .
+            @prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .
+            @prefix : <urn:> .
+            <urn:graph> {
+                # Argument passed to a parameter
+                :v1 rdf:type line:Variable ; rdfs:label "ch" ; line:output :arg1 .
+                :arg1 line:position 1 ; line:output :call1 .
+                :call1 line:reference :r .
+                :r rdf:type line:Routine ; line:member :p1, :p2 .
+                :p1 rdf:type line:Parameter ; line:position 1 ; line:output :o1 .
+                :o1 rdf:type line:Variable ; rdfs:label "ch" ; line:output :a1 .
+                :a1 rdf:type line:Column ; rdfs:label "other" ; line:output :o1 .
+
+                # Record field passed as argument
+                :f2 rdf:type line:Field ; rdfs:label "h2" .
+                :rec2 line:member :f2 ; line:output :arg2 .
+                :arg2 line:position 2 ; line:output :call2 .
+                :call2 line:reference :r .
+                :p2 rdf:type line:Parameter ; line:position 2 ; line:output :out2 .
+                :out2 line:member :o2, :x2 .
+                :o2 rdf:type line:Field ; rdfs:label "h2" .
+                :x2 rdf:type line:Field ; rdfs:label "nope" .
+
+                # Cursor read into a structure
+                :v3 rdf:type line:Variable ; rdfs:label "H3" ; line:output :c3 .
+                :c3 rdf:type line:Cursor .
+                :call3 line:reference :c3 ; line:output :s3 .
+                :s3 line:output :t3 .
+                :t3 line:member :o3 .
+                :o3 rdf:type line:Alias ; rdfs:label "H3" .
+
+                # Filtered out by the label
+                :v4 rdf:type line:Variable ; rdfs:label "x" ; line:output :c3 .
+                :o4 rdf:type line:Alias ; rdfs:label "x" .
+                :t3 line:member :o4 .
+            }
+            """;
+
+    @Test
+    public void testSameAsSparql() throws IOException {
+        var model = Rio.parse(new StringReader(GRAPH), "", RDFFormat.TRIG);
+
+        var shortcuts = new Shortcuts("post.ch", Pattern.compile("h", Pattern.CASE_INSENSITIVE));
+        model.forEach(shortcuts::handleStatement);
+        var collector = new StatementCollector();
+        var count = shortcuts.write(iri("urn:shortcuts"), collector);
+
+        var expected = sparql(model);
+        assertEquals(expected, triples(collector.getStatements()));
+        assertEquals(expected.size(), count);
+        assertTrue(expected.contains("urn:o1 urn:o1"));
+        assertTrue(expected.contains("urn:f2 urn:o2"));
+        assertTrue(expected.contains("urn:v3 urn:o3"));
+        assertFalse(expected.contains("urn:v4 urn:o4"));
+        assertTrue(collector.getStatements().stream().allMatch(statement -> statement.getContext().equals(iri("urn:shortcuts"))));
+    }
+
+    @Test
+    public void testWithoutFilter() throws IOException {
+        var model = Rio.parse(new StringReader(GRAPH), "", RDFFormat.TRIG);
+        var shortcuts = new Shortcuts("post.ch", null);
+        model.forEach(shortcuts::handleStatement);
+        var collector = new StatementCollector();
+        shortcuts.write(iri("urn:shortcuts"), collector);
+        assertTrue(triples(collector.getStatements()).contains("urn:v4 urn:o4"));
+    }
+
+    private static Set<String> sparql(Model model) throws IOException {
+        var repository = new SailRepository(new MemoryStore());
+        try (var connection = repository.getConnection();
+             var in = ShortcutsTest.class.getResourceAsStream("/simpllify.sparql")) {
+            connection.add(model);
+            var query = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            var result = new LinkedHashModel(QueryResults.asModel(connection.prepareGraphQuery(query).evaluate()));
+            return triples(result);
+        } finally {
+            repository.shutDown();
+        }
+    }
+
+    private static Set<String> triples(Iterable<Statement> statements) {
+        var result = new TreeSet<String>();
+        statements.forEach(statement -> result.add(statement.getSubject() + " " + statement.getObject()));
+        return result;
+    }
+}
@@ -0,0 +1,69 @@
+package ch.post.tools.seqeline.stack;
+
+import ch.post.tools.seqeline.binding.Binding;
+import ch.post.tools.seqeline.binding.BindingSequence;
+import ch.post.tools.seqeline.binding.BindingType;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StackTest {
+
+    @Test
+    public void testShadowing() {
+        new BindingSequence().run(() -> {
+            var stack = new Stack();
+            var outer = new Binding("x", BindingType.VARIABLE);
+            var inner = new Binding("x", BindingType.PARAMETER);
+            stack.execute(new LexicalScope(), () -> {
+                stack.top().declare(outer);
+                stack.execute(new LexicalScope(), () -> {
+                    stack.top().declare(inner);
+                    assertSame(inner, stack.top().resolve(QualifiedName.of("x")).orElseThrow());
+                    stack.execute(new Children(true), () ->
+                            assertSame(outer, stack.top().parent.parent.resolve(QualifiedName.of("x")).orElseThrow()));
+                });
+                assertSame(outer, stack.top().resolve(QualifiedName.of("x")).orElseThrow());
+            });
+            var undeclared = stack.top().resolve(QualifiedName.of("x")).orElseThrow();
+            assertNotSame(outer, undeclared);
+            assertEquals(BindingType.UNDEFINED, undeclared.getType());
+            return null;
+        });
+    }
+
+    @Test
+    public void testDeclaredNamesSkipSelection() {
+        new BindingSequence().run(() -> {
+            var stack = new Stack();
+            var variable = new Binding("c", BindingType.VARIABLE);
+            var column = new Binding("c", BindingType.ALIAS);
+            stack.execute(new LexicalScope(), () -> {
+                stack.top().declare(variable);
+                stack.execute(new SelectStatement(), () -> {
+                    stack.top().declare(column);
+                    assertSame(column, stack.top().resolve(QualifiedName.of("c")).orElseThrow());
+                    assertSame(variable, stack.top().resolve(QualifiedName.of(null, "c", true)).orElseThrow());
+                    assertTrue(stack.top().resolve(QualifiedName.of(null, "d", true)).isEmpty());
+                });
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void testGlobalNamesBubbleUp() {
+        new BindingSequence().run(() -> {
+            var stack = new Stack();
+            var local = new Binding("t", BindingType.VARIABLE);
+            stack.execute(new LexicalScope(), () -> {
+                stack.top().declare(local);
+                var relation = stack.top().resolve(new QualifiedName(null, "t", false, BindingType.RELATION)).orElseThrow();
+                assertNotSame(local, relation);
+                // The local declaration was dropped
+                assertNotSame(local, stack.top().resolve(QualifiedName.of("t")).orElseThrow());
+            });
+            return null;
+        });
+    }
+}
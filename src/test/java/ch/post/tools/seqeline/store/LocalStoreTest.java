@@ -0,0 +1,79 @@
+package ch.post.tools.seqeline.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalStoreTest {
+
+    private static final String PREFIXES = """
+            @prefix line: <https://schema.post.ch/lineage/> .
+            @prefix rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> .
+            """;
+
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testUpdate(boolean memory) throws IOException {
+        var a = graph("a.trig", "<urn:graph:a> { <urn:a> line:output <urn:x> . }");
+        var b = graph("b.trig", "<urn:graph:b> { <urn:b> line:output <urn:y> . }");
+        var query = dir.resolve("outputs.sparql");
+        Files.writeString(query, "SELECT ?s ?o WHERE { ?s <https://schema.post.ch/lineage/output> ?o } ORDER BY ?s");
+        var storeDir = dir.resolve("store").toFile();
+
+        try (var store = new LocalStore(storeDir, memory)) {
+            assertEquals(2, store.update(Map.of("a.trig", new LocalStore.GraphFile(a, "1"), "b.trig", new LocalStore.GraphFile(b, "1"))));
+        }
+
+        graph("a.trig", "<urn:graph:a> { <urn:a> line:output <urn:z> . }");
+        try (var store = new LocalStore(storeDir, memory)) {
+            assertEquals(1, store.update(Map.of("a.trig", new LocalStore.GraphFile(a, "2"), "b.trig", new LocalStore.GraphFile(b, "1"))));
+            var result = store.query(query.toString(), new File(storeDir, "results"));
+            assertEquals("outputs.csv", result.getName());
+            assertEquals("s,o\r\nurn:a,urn:z\r\nurn:b,urn:y\r\n", Files.readString(result.toPath()));
+        }
+
+        // Source of b deleted, a generated in another format
+        var moved = dir.resolve("a.nq");
+        Files.writeString(moved, "<urn:a> <https://schema.post.ch/lineage/output> <urn:z> <urn:graph:a> .\n");
+        try (var store = new LocalStore(storeDir, memory)) {
+            assertEquals(1, store.update(Map.of("a.nq", new LocalStore.GraphFile(moved.toFile(), "3"))));
+            var result = store.query(query.toString(), new File(storeDir, "results"));
+            assertEquals("s,o\r\nurn:a,urn:z\r\n", Files.readString(result.toPath()));
+        }
+    }
+
+    @Test
+    public void testBundledQuery() throws IOException {
+        var graph = graph("p.trig", """
+                <urn:graph:p> {
+                    <urn:p> rdf:type line:Package ; line:member <urn:f>, <urn:g> .
+                    <urn:f> rdf:type line:Routine ; line:reference <urn:g> .
+                    <urn:g> rdf:type line:Routine .
+                }
+                """);
+        try (var store = new LocalStore(dir.resolve("store").toFile(), true)) {
+            store.update(Map.of("p.trig", new LocalStore.GraphFile(graph, "1")));
+            var result = store.query("code-depenencies", dir.resolve("results").toFile());
+            assertEquals("code-depenencies.ttl", result.getName());
+            assertTrue(Files.readString(result.toPath()).contains("<urn:f> line:dependency <urn:g>"));
+        }
+    }
+
+    private File graph(String name, String content) throws IOException {
+        var file = dir.resolve(name);
+        Files.writeString(file, PREFIXES + content);
+        return file.toFile();
+    }
+}
@@ -0,0 +1,88 @@
+package ch.post.tools.seqeline.tree;
+
+import ch.post.tools.seqeline.parser.Parser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryTreeTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        var input = """
+                select "Name", t.id from tab t where t.id = 'x';
+                """;
+        var root = new Parser().parse(new ByteArrayInputStream(input.getBytes()));
+        var file = new File(dir, "test.tree");
+        try (var out = new FileOutputStream(file)) {
+            BinaryTree.write(root, out);
+        }
+        var read = BinaryTree.read(file);
+
+        assertEquals(xml(root), xml(read));
+        assertEquals("name", read.find("id_expression").first().text());
+    }
+
+    @Test
+    public void testUnsupportedFormat() throws IOException {
+        var file = new File(dir, "test.tree");
+        Files.writeString(file.toPath(), "<sql_script></sql_script>");
+        assertThrows(IOException.class, () -> BinaryTree.read(file));
+    }
+
+    @Test
+    public void testCorrupted() throws IOException {
+        var builder = new TreeBuilder();
+        builder.open("sql_script");
+        builder.open("id_expression");
+        builder.token("a");
+        builder.close();
+        builder.open("id_expression");
+        builder.token("b");
+        builder.close();
+        builder.close();
+        var out = new ByteArrayOutputStream();
+        BinaryTree.write(builder.build(), out);
+        var bytes = out.toByteArray();
+        assertEquals(2, BinaryTree.read(ByteBuffer.wrap(bytes)).children().size());
+
+        // Truncated anywhere after the header
+        for (int length = 5; length < bytes.length; length++) {
+            var truncated = Arrays.copyOf(bytes, length);
+            var file = new File(dir, "truncated.tree");
+            Files.write(file.toPath(), truncated);
+            assertThrows(IOException.class, () -> BinaryTree.read(file), "length " + length);
+        }
+
+        // Huge string table
+        var huge = Arrays.copyOf(bytes, bytes.length);
+        huge[5] = (byte) 0xff;
+        huge[6] = (byte) 0xff;
+        assertThrows(IOException.class, () -> BinaryTree.read(ByteBuffer.wrap(huge)));
+
+        // Root claiming a missing child
+        var unbalanced = Arrays.copyOf(bytes, bytes.length);
+        unbalanced[bytes.length - 7]++;
+        assertThrows(IOException.class, () -> BinaryTree.read(ByteBuffer.wrap(unbalanced)));
+    }
+
+    private static String xml(Node root) {
+        var out = new StringWriter();
+        XmlTree.write(root, out);
+        return out.toString();
+    }
+}
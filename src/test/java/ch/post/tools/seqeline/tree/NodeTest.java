@@ -0,0 +1,21 @@
+package ch.post.tools.seqeline.tree;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeTest {
+
+    @Test
+    public void testEmpty() {
+        var empty = Node.EMPTY;
+        assertTrue(empty.isEmpty());
+        assertEquals(0, empty.children().size());
+        assertEquals(0, empty.children("id_expression").size());
+        assertEquals(0, empty.find("id_expression").size());
+        assertEquals(0, empty.children().find("id_expression").size());
+        assertTrue(empty.child(0).isEmpty());
+        assertTrue(empty.child("id_expression").isEmpty());
+        assertEquals("", empty.text());
+    }
+}
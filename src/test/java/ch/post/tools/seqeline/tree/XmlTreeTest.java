@@ -0,0 +1,32 @@
+package ch.post.tools.seqeline.tree;
+
+import ch.post.tools.seqeline.parser.Parser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class XmlTreeTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        var input = """
+                select "Name", t.id from tab t;
+                """;
+        var root = new Parser().parse(new ByteArrayInputStream(input.getBytes()));
+        var xml = new StringWriter();
+        XmlTree.write(root, xml);
+
+        var read = XmlTree.read(new ByteArrayInputStream(xml.toString().getBytes(StandardCharsets.UTF_8)));
+        var copy = new StringWriter();
+        XmlTree.write(read, copy);
+
+        assertEquals(xml.toString(), copy.toString());
+        assertEquals("name", read.find("id_expression").first().text());
+        assertEquals("tab", read.find("tableview_name").first().text());
+    }
+}
@@ -0,0 +1,608 @@
+CREATE OR REPLACE PACKAGE BODY pkg IS
+    PROCEDURE pr IS
+        n NUMBER;
+        m NUMBER;
+    BEGIN
+        IF n > 0 THEN
+        IF n > 1 THEN
+        IF n > 2 THEN
+        IF n > 3 THEN
+        IF n > 4 THEN
+        IF n > 5 THEN
+        IF n > 6 THEN
+        IF n > 7 THEN
+        IF n > 8 THEN
+        IF n > 9 THEN
+        IF n > 10 THEN
+        IF n > 11 THEN
+        IF n > 12 THEN
+        IF n > 13 THEN
+        IF n > 14 THEN
+        IF n > 15 THEN
+        IF n > 16 THEN
+        IF n > 17 THEN
+        IF n > 18 THEN
+        IF n > 19 THEN
+        IF n > 20 THEN
+        IF n > 21 THEN
+        IF n > 22 THEN
+        IF n > 23 THEN
+        IF n > 24 THEN
+        IF n > 25 THEN
+        IF n > 26 THEN
+        IF n > 27 THEN
+        IF n > 28 THEN
+        IF n > 29 THEN
+        IF n > 30 THEN
+        IF n > 31 THEN
+        IF n > 32 THEN
+        IF n > 33 THEN
+        IF n > 34 THEN
+        IF n > 35 THEN
+        IF n > 36 THEN
+        IF n > 37 THEN
+        IF n > 38 THEN
+        IF n > 39 THEN
+        IF n > 40 THEN
+        IF n > 41 THEN
+        IF n > 42 THEN
+        IF n > 43 THEN
+        IF n > 44 THEN
+        IF n > 45 THEN
+        IF n > 46 THEN
+        IF n > 47 THEN
+        IF n > 48 THEN
+        IF n > 49 THEN
+        IF n > 50 THEN
+        IF n > 51 THEN
+        IF n > 52 THEN
+        IF n > 53 THEN
+        IF n > 54 THEN
+        IF n > 55 THEN
+        IF n > 56 THEN
+        IF n > 57 THEN
+        IF n > 58 THEN
+        IF n > 59 THEN
+        IF n > 60 THEN
+        IF n > 61 THEN
+        IF n > 62 THEN
+        IF n > 63 THEN
+        IF n > 64 THEN
+        IF n > 65 THEN
+        IF n > 66 THEN
+        IF n > 67 THEN
+        IF n > 68 THEN
+        IF n > 69 THEN
+        IF n > 70 THEN
+        IF n > 71 THEN
+        IF n > 72 THEN
+        IF n > 73 THEN
+        IF n > 74 THEN
+        IF n > 75 THEN
+        IF n > 76 THEN
+        IF n > 77 THEN
+        IF n > 78 THEN
+        IF n > 79 THEN
+        IF n > 80 THEN
+        IF n > 81 THEN
+        IF n > 82 THEN
+        IF n > 83 THEN
+        IF n > 84 THEN
+        IF n > 85 THEN
+        IF n > 86 THEN
+        IF n > 87 THEN
+        IF n > 88 THEN
+        IF n > 89 THEN
+        IF n > 90 THEN
+        IF n > 91 THEN
+        IF n > 92 THEN
+        IF n > 93 THEN
+        IF n > 94 THEN
+        IF n > 95 THEN
+        IF n > 96 THEN
+        IF n > 97 THEN
+        IF n > 98 THEN
+        IF n > 99 THEN
+        IF n > 100 THEN
+        IF n > 101 THEN
+        IF n > 102 THEN
+        IF n > 103 THEN
+        IF n > 104 THEN
+        IF n > 105 THEN
+        IF n > 106 THEN
+        IF n > 107 THEN
+        IF n > 108 THEN
+        IF n > 109 THEN
+        IF n > 110 THEN
+        IF n > 111 THEN
+        IF n > 112 THEN
+        IF n > 113 THEN
+        IF n > 114 THEN
+        IF n > 115 THEN
+        IF n > 116 THEN
+        IF n > 117 THEN
+        IF n > 118 THEN
+        IF n > 119 THEN
+        IF n > 120 THEN
+        IF n > 121 THEN
+        IF n > 122 THEN
+        IF n > 123 THEN
+        IF n > 124 THEN
+        IF n > 125 THEN
+        IF n > 126 THEN
+        IF n > 127 THEN
+        IF n > 128 THEN
+        IF n > 129 THEN
+        IF n > 130 THEN
+        IF n > 131 THEN
+        IF n > 132 THEN
+        IF n > 133 THEN
+        IF n > 134 THEN
+        IF n > 135 THEN
+        IF n > 136 THEN
+        IF n > 137 THEN
+        IF n > 138 THEN
+        IF n > 139 THEN
+        IF n > 140 THEN
+        IF n > 141 THEN
+        IF n > 142 THEN
+        IF n > 143 THEN
+        IF n > 144 THEN
+        IF n > 145 THEN
+        IF n > 146 THEN
+        IF n > 147 THEN
+        IF n > 148 THEN
+        IF n > 149 THEN
+        IF n > 150 THEN
+        IF n > 151 THEN
+        IF n > 152 THEN
+        IF n > 153 THEN
+        IF n > 154 THEN
+        IF n > 155 THEN
+        IF n > 156 THEN
+        IF n > 157 THEN
+        IF n > 158 THEN
+        IF n > 159 THEN
+        IF n > 160 THEN
+        IF n > 161 THEN
+        IF n > 162 THEN
+        IF n > 163 THEN
+        IF n > 164 THEN
+        IF n > 165 THEN
+        IF n > 166 THEN
+        IF n > 167 THEN
+        IF n > 168 THEN
+        IF n > 169 THEN
+        IF n > 170 THEN
+        IF n > 171 THEN
+        IF n > 172 THEN
+        IF n > 173 THEN
+        IF n > 174 THEN
+        IF n > 175 THEN
+        IF n > 176 THEN
+        IF n > 177 THEN
+        IF n > 178 THEN
+        IF n > 179 THEN
+        IF n > 180 THEN
+        IF n > 181 THEN
+        IF n > 182 THEN
+        IF n > 183 THEN
+        IF n > 184 THEN
+        IF n > 185 THEN
+        IF n > 186 THEN
+        IF n > 187 THEN
+        IF n > 188 THEN
+        IF n > 189 THEN
+        IF n > 190 THEN
+        IF n > 191 THEN
+        IF n > 192 THEN
+        IF n > 193 THEN
+        IF n > 194 THEN
+        IF n > 195 THEN
+        IF n > 196 THEN
+        IF n > 197 THEN
+        IF n > 198 THEN
+        IF n > 199 THEN
+        IF n > 200 THEN
+        IF n > 201 THEN
+        IF n > 202 THEN
+        IF n > 203 THEN
+        IF n > 204 THEN
+        IF n > 205 THEN
+        IF n > 206 THEN
+        IF n > 207 THEN
+        IF n > 208 THEN
+        IF n > 209 THEN
+        IF n > 210 THEN
+        IF n > 211 THEN
+        IF n > 212 THEN
+        IF n > 213 THEN
+        IF n > 214 THEN
+        IF n > 215 THEN
+        IF n > 216 THEN
+        IF n > 217 THEN
+        IF n > 218 THEN
+        IF n > 219 THEN
+        IF n > 220 THEN
+        IF n > 221 THEN
+        IF n > 222 THEN
+        IF n > 223 THEN
+        IF n > 224 THEN
+        IF n > 225 THEN
+        IF n > 226 THEN
+        IF n > 227 THEN
+        IF n > 228 THEN
+        IF n > 229 THEN
+        IF n > 230 THEN
+        IF n > 231 THEN
+        IF n > 232 THEN
+        IF n > 233 THEN
+        IF n > 234 THEN
+        IF n > 235 THEN
+        IF n > 236 THEN
+        IF n > 237 THEN
+        IF n > 238 THEN
+        IF n > 239 THEN
+        IF n > 240 THEN
+        IF n > 241 THEN
+        IF n > 242 THEN
+        IF n > 243 THEN
+        IF n > 244 THEN
+        IF n > 245 THEN
+        IF n > 246 THEN
+        IF n > 247 THEN
+        IF n > 248 THEN
+        IF n > 249 THEN
+        IF n > 250 THEN
+        IF n > 251 THEN
+        IF n > 252 THEN
+        IF n > 253 THEN
+        IF n > 254 THEN
+        IF n > 255 THEN
+        IF n > 256 THEN
+        IF n > 257 THEN
+        IF n > 258 THEN
+        IF n > 259 THEN
+        IF n > 260 THEN
+        IF n > 261 THEN
+        IF n > 262 THEN
+        IF n > 263 THEN
+        IF n > 264 THEN
+        IF n > 265 THEN
+        IF n > 266 THEN
+        IF n > 267 THEN
+        IF n > 268 THEN
+        IF n > 269 THEN
+        IF n > 270 THEN
+        IF n > 271 THEN
+        IF n > 272 THEN
+        IF n > 273 THEN
+        IF n > 274 THEN
+        IF n > 275 THEN
+        IF n > 276 THEN
+        IF n > 277 THEN
+        IF n > 278 THEN
+        IF n > 279 THEN
+        IF n > 280 THEN
+        IF n > 281 THEN
+        IF n > 282 THEN
+        IF n > 283 THEN
+        IF n > 284 THEN
+        IF n > 285 THEN
+        IF n > 286 THEN
+        IF n > 287 THEN
+        IF n > 288 THEN
+        IF n > 289 THEN
+        IF n > 290 THEN
+        IF n > 291 THEN
+        IF n > 292 THEN
+        IF n > 293 THEN
+        IF n > 294 THEN
+        IF n > 295 THEN
+        IF n > 296 THEN
+        IF n > 297 THEN
+        IF n > 298 THEN
+        IF n > 299 THEN
+        m := n;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+        END IF;
+    END;
+END;
\ No newline at end of file